@@ -1,78 +0,0 @@
-package rkr.simplekeyboard.inputmethod.keyboard;
-
-// Stupid non-unicode Java.
-public class Emoji {
-    public static final String BigSmile = "\uD83D\uDE0A";
-    public static final String Grin = "\uD83D\uDE00";
-    public static final String BigGrin = "\uD83D\uDE01";
-    public static final String Rofl = "\uD83E\uDD23";
-    public static final String Smile = "\uD83D\uDE42";
-    public static final String Wink = "\uD83D\uDE09";
-    public static final String LoveFace = "\uD83E\uDD70";
-    public static final String KissFace = "\uD83D\uDE18";
-    public static final String Eyebrow = "\uD83E\uDD28";
-    public static final String NoFace = "\uD83D\uDE10";
-    public static final String Phew = "\uD83D\uDE0C";
-    public static final String Puke = "\uD83E\uDD2E";
-    public static final String CrossEye = "\uD83D\uDE35";
-    public static final String CowBoy = "\uD83E\uDD20";
-    public static final String RageFace = "\uD83D\uDE21";
-    public static final String SwearFace = "\uD83E\uDD2C";
-    public static final String AngryFace = "\uD83D\uDE20";
-    public static final String Weary = "\uD83D\uDE29";
-    public static final String BigCry = "\uD83D\uDE2D";
-    public static final String FearFace = "\uD83D\uDE28";
-    public static final String ShitFace = "\uD83D\uDCA9";
-    public static final String SkullFace = "☠";
-    public static final String RobotFace = "\uD83E\uDD16";
-    public static final String ThumbUp = "\uD83D\uDC4D";
-    public static final String ThumbDown = "\uD83D\uDC4E";
-    public static final String Muscle = "\uD83D\uDCAA";
-    public static final String Brain = "\uD83E\uDDE0";
-    public static final String LookEyes = "\uD83D\uDC40";
-    public static final String Ninja = "\uD83E\uDD77";
-    public static final String Superhero = "\uD83E\uDDB8";
-    public static final String Magician = "\uD83E\uDDD9";
-    public static final String Fairy = "\uD83E\uDDDA";
-    public static final String Zombie = "\uD83E\uDDDF";
-    public static final String Runner = "\uD83C\uDFC3";
-    public static final String TwoHearts = "💕";
-    public static final String Speech = "\uD83D\uDCAC";
-    public static final String Toilet = "\uD83D\uDEBB";
-    public static final String Warning = "⚠";
-    public static final String NoEntry = "⛔";
-    public static final String Denied = "\uD83D\uDEAB";
-    public static final String Radioactive = "☢";
-    public static final String BioHazard = "☣";
-    public static final String UpArrow = "⬆";
-    public static final String GoBack = "\uD83D\uDD19";
-    public static final String WTF = "⁉";
-    public static final String FastBike = "\uD83C\uDFCD";
-    public static final String GearWheel = "⚙";
-    public static final String MiniBusVan = "\uD83D\uDE90";
-    public static final String FuelPump = "⛽";
-    public static final String Construction = "\uD83D\uDEA7";
-    public static final String Planet = "\uD83E\uDE90";
-    public static final String Rocket = "\uD83D\uDE80";
-    public static final String TakeOff = "\uD83D\uDEEB";
-    public static final String Landing = "\uD83D\uDEEC";
-    public static final String WarnLight = "\uD83D\uDEA8";
-    public static final String Pitard = "\uD83D\uDCA3";
-    public static final String WorldMap = "\uD83D\uDDFA";
-    public static final String Bell = "\uD83D\uDECE";
-    public static final String Ribbon = "\uD83C\uDF80";
-    public static final String GiftBox = "\uD83C\uDF81";
-    public static final String Controls = "\uD83C\uDF9B";
-    public static final String FloppyDisk = "\uD83D\uDCBE";
-    public static final String Camera = "\uD83D\uDCF7";
-    public static final String Pencil = "✏";
-    public static final String Package = "\uD83D\uDCE6";
-    public static final String Calendar = "\uD83D\uDDD3";
-    public static final String PaperClip = "\uD83D\uDCCE";
-    public static final String TrashBin = "\uD83D\uDDD1";
-    public static final String PadLock1 = "\uD83D\uDD12";
-    public static final String PadLock2 = "\uD83D\uDD13";
-    public static final String PadLock3 = "\uD83D\uDD10";
-    public static final String Tools = "\uD83D\uDEE0";
-    public static final String Wrench = "\uD83D\uDD27";
-}
@@ -0,0 +1,186 @@
+package rkr.simplekeyboard.inputmethod.keyboard;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.View;
+
+import rkr.simplekeyboard.inputmethod.latin.utils.ExecutorUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.MemoryTrimmer;
+
+/**
+ * The cells of an emoji page drawn once into a bitmap, so frames copy them out with
+ * {@link Canvas#drawBitmap} instead of rasterising 81 colour font glyphs every time.
+ *
+ * The atlas is a 9x9 grid of cells at the size the zoomed out view draws them. It is built on
+ * the background executor when a page is first drawn, and until it is ready the view draws the
+ * text as usual. A new page, cell size, density or colour builds a new one. Only used on the UI
+ * thread, apart from the drawing into a new bitmap.
+ */
+final class EmojiAtlas implements MemoryTrimmer.Trimmable {
+    private static final String TAG = EmojiAtlas.class.getSimpleName();
+    private static final int SIZE = 9;
+
+    private static final EmojiAtlas sInstance = new EmojiAtlas();
+
+    /** What an atlas shows, and how. */
+    private static final class Spec {
+        final String[][] mLayout;
+        final String[] mDescriptions;
+        final int mCellWidth;
+        final int mCellHeight;
+        final float mFontDiv;
+        final int mDensityDpi;
+        final int mMainFontColor;
+        final int mModeFontColor;
+
+        Spec(final String[][] layout, final int cellWidth, final int cellHeight,
+                final float fontDiv, final int densityDpi, final int mainFontColor,
+                final int modeFontColor) {
+            mLayout = layout;
+            // Made here rather than on the background thread, as some labels are looked up.
+            mDescriptions = new String[SIZE * SIZE];
+            for (int i = 0; i < mDescriptions.length; i++) {
+                mDescriptions[i] = KeyboardLayout.Visualise(layout[i / SIZE][i % SIZE]);
+            }
+            mCellWidth = cellWidth;
+            mCellHeight = cellHeight;
+            mFontDiv = fontDiv;
+            mDensityDpi = densityDpi;
+            mMainFontColor = mainFontColor;
+            mModeFontColor = modeFontColor;
+        }
+
+        boolean matches(final String[][] layout, final int cellWidth, final int cellHeight,
+                final float fontDiv, final int densityDpi, final int mainFontColor,
+                final int modeFontColor) {
+            return mLayout == layout && mCellWidth == cellWidth && mCellHeight == cellHeight
+                    && mFontDiv == fontDiv && mDensityDpi == densityDpi
+                    && mMainFontColor == mainFontColor && mModeFontColor == modeFontColor;
+        }
+    }
+
+    private Spec mSpec;
+    private Bitmap mBitmap;
+    private Spec mPendingSpec;
+    // Bumped to throw away a build that is no longer wanted.
+    private int mGeneration;
+    private final Rect mSrcRect = new Rect();
+    private final Rect mDstRect = new Rect();
+    private final Handler mUiHandler = new Handler(Looper.getMainLooper());
+
+    private EmojiAtlas() {
+        MemoryTrimmer.register(this, MemoryTrimmer.TIER_BITMAPS);
+    }
+
+    public static EmojiAtlas getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Make sure an atlas for the layout is ready or on its way.
+     * @return whether the atlas matches, so {@link #draw} can be used for this frame
+     */
+    public boolean prepare(final View view, final String[][] layout, final int cellWidth,
+            final int cellHeight, final float fontDiv, final int densityDpi,
+            final int mainFontColor, final int modeFontColor) {
+        if (mSpec != null && mSpec.matches(layout, cellWidth, cellHeight, fontDiv, densityDpi,
+                mainFontColor, modeFontColor)) {
+            return true;
+        }
+        if (mPendingSpec != null && mPendingSpec.matches(layout, cellWidth, cellHeight, fontDiv,
+                densityDpi, mainFontColor, modeFontColor)) {
+            return false;
+        }
+        if (cellWidth <= 0 || cellHeight <= 0) {
+            return false;
+        }
+        final Spec spec = new Spec(layout, cellWidth, cellHeight, fontDiv, densityDpi,
+                mainFontColor, modeFontColor);
+        final int generation = ++mGeneration;
+        mPendingSpec = spec;
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = build(spec);
+                // Not View.post(), which can hold the result until the view is attached again.
+                mUiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration || bitmap == null) {
+                            if (bitmap != null) bitmap.recycle();
+                            if (generation == mGeneration) mPendingSpec = null;
+                            return;
+                        }
+                        if (mBitmap != null) mBitmap.recycle();
+                        mBitmap = bitmap;
+                        mSpec = spec;
+                        mPendingSpec = null;
+                        view.invalidate();
+                    }
+                });
+            }
+        });
+        return false;
+    }
+
+    private static Bitmap build(final Spec spec) {
+        final Bitmap bitmap;
+        try {
+            bitmap = Bitmap.createBitmap(spec.mCellWidth * SIZE, spec.mCellHeight * SIZE,
+                    Bitmap.Config.ARGB_8888);
+        } catch (final OutOfMemoryError e) {
+            Log.w(TAG, "No room for the emoji atlas", e);
+            return null;
+        }
+        final Canvas canvas = new Canvas(bitmap);
+        final Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setTypeface(Typeface.MONOSPACE);
+        for (int i = 0; i < spec.mDescriptions.length; i++) {
+            KeyboardView.drawCellText(canvas, spec.mDescriptions[i],
+                    (i % SIZE) * spec.mCellWidth, (i / SIZE) * spec.mCellHeight,
+                    spec.mCellWidth, spec.mFontDiv, spec.mMainFontColor, spec.mModeFontColor,
+                    paint);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Copy a cell out of the atlas. Only valid after {@link #prepare} returned true this frame.
+     */
+    public void draw(final Canvas canvas, final int x, final int y, final int left,
+            final int top) {
+        final int w = mSpec.mCellWidth;
+        final int h = mSpec.mCellHeight;
+        mSrcRect.set(x * w, y * h, x * w + w, y * h + h);
+        mDstRect.set(left, top, left + w, top + h);
+        canvas.drawBitmap(mBitmap, mSrcRect, mDstRect, null);
+    }
+
+    @Override
+    public void releaseMemory() {
+        mGeneration++;
+        mPendingSpec = null;
+        mSpec = null;
+        if (mBitmap != null) {
+            mBitmap.recycle();
+            mBitmap = null;
+        }
+    }
+
+    @Override
+    public void rebuild() {
+        // Built again when an emoji page is next drawn, at whatever size it is drawn then.
+    }
+
+    @Override
+    public long getRetainedBytes() {
+        return mBitmap == null ? 0 : mBitmap.getByteCount();
+    }
+}
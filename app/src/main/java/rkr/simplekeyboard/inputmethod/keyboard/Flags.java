@@ -1,27 +0,0 @@
-package rkr.simplekeyboard.inputmethod.keyboard;
-
-/** @noinspection UnnecessaryUnicodeEscape*/
-public class Flags {
-    public static final String ChequeredFlag = "\uD83C\uDFC1";
-    public static final String BlackFlag = "\uD83C\uDFF4";
-    public static final String WhiteFlag = "\uD83C\uDFF3\uFE0F";
-    public static final String PirateFlag = "\uD83C\uDFF4\u200D☠\uFE0F";
-    public static final String UnitedNations = "\uD83C\uDDFA\uD83C\uDDF3";
-    public static final String UnitedStates = "\uD83C\uDDFA\uD83C\uDDF8";
-    public static final String Canada = "\uD83C\uDDE8\uD83C\uDDE6";
-    public static final String Ghana = "\uD83C\uDDEC\uD83C\uDDED";
-    public static final String Gambia = "\uD83C\uDDEC\uD83C\uDDF2";
-    public static final String Tanzania = "\uD83C\uDDF9\uD83C\uDDFF";
-    public static final String Kenya = "\uD83C\uDDF0\uD83C\uDDEA";
-    public static final String England = "\uD83C\uDFF4\uDB40\uDC67\uDB40\uDC62\uDB40\uDC65\uDB40\uDC6E\uDB40\uDC67\uDB40\uDC7F";
-    public static final String Scotland = "\uD83C\uDFF4\uDB40\uDC67\uDB40\uDC62\uDB40\uDC73\uDB40\uDC63\uDB40\uDC74\uDB40\uDC7F";
-    public static final String Wales = "\uD83C\uDFF4\uDB40\uDC67\uDB40\uDC62\uDB40\uDC77\uDB40\uDC6C\uDB40\uDC73\uDB40\uDC7F";
-    public static final String UnitedKingdom = "\uD83C\uDDEC\uD83C\uDDE7";
-    public static final String Spain = "\uD83C\uDDEA\uD83C\uDDF8";
-    public static final String EuropeanUnion = "🇪🇺";
-    public static final String Ireland = "\uD83C\uDDEE\uD83C\uDDEA";
-    public static final String Ukraine = "\uD83C\uDDFA\uD83C\uDDE6";
-    public static final String Australia = "\uD83C\uDDE6\uD83C\uDDFA";
-    public static final String NewZealand = "\uD83C\uDDF3\uD83C\uDDFF";
-    public static final String Antarctica = "\uD83C\uDDE6\uD83C\uDDF6";
-}
@@ -31,6 +31,49 @@ public interface KeyboardActionListener {
 
     void SendKeyEvent(KeyEvent keyEvent);
 
+    /**
+     * Returns the part of the word being typed that is before the cursor. Only called on the
+     * UI thread.
+     */
+    String getCompletionPrefix();
+
+    /**
+     * Returns the text just before the cursor, or null if it can't be read.
+     *
+     * @param length the most characters to return.
+     */
+    CharSequence getTextBeforeCursor(int length);
+
+    /**
+     * Returns completions of a word, most likely first. May be called from any thread.
+     *
+     * @param prefix the start of the word, as returned by {@link #getCompletionPrefix()}.
+     * @param limit the most to return.
+     */
+    String[] getCompletions(String prefix, int limit);
+
+    /**
+     * Finishes the word being typed as one of its completions, followed by a space.
+     *
+     * @param word the completed word, as returned by {@link #getCompletions(String, int)}.
+     */
+    void onCompletionInput(String word);
+
+    /**
+     * Called when the user touches down on the keyboard, to vibrate. Which key will be sent
+     * isn't known until the finger is lifted.
+     */
+    void onPressKey();
+
+    /**
+     * Called when a key has been sent, to play its sound.
+     *
+     * @param primaryCode {@link Constants#CODE_DELETE}, {@link Constants#CODE_ENTER} or
+     *     {@link Constants#CODE_SPACE} for the keys with a sound of their own, otherwise
+     *     {@link Constants#NOT_A_CODE}.
+     */
+    void onReleaseKey(int primaryCode);
+
     KeyboardActionListener EMPTY_LISTENER = new Adapter();
 
 
@@ -39,5 +82,17 @@ public interface KeyboardActionListener {
         public void SendKeyEvent(KeyEvent keyEvent) { }
         @Override
         public void onTextInput(String text) {}
+        @Override
+        public String getCompletionPrefix() { return ""; }
+        @Override
+        public CharSequence getTextBeforeCursor(int length) { return null; }
+        @Override
+        public String[] getCompletions(String prefix, int limit) { return new String[0]; }
+        @Override
+        public void onCompletionInput(String word) {}
+        @Override
+        public void onPressKey() {}
+        @Override
+        public void onReleaseKey(int primaryCode) {}
     }
 }
@@ -1,333 +1,550 @@
-package rkr.simplekeyboard.inputmethod.keyboard;
-import static android.view.KeyEvent.*;
-
-import java.util.Objects;
-
-public class KeyboardLayout {
-
-    public static final String nul = "\0";
-    public static final String RET = "\n";
-    public static final String BAK = "\u0008";
-
-    // arrows, other special buttons (private use chars below 0xE100)
-    public static final String ARR = "\uE001";
-    public static final String ARL = "\uE002";
-    public static final String ARU = "\uE003";
-    public static final String ARD = "\uE004";
-    public static final String SER = "\uE005"; // search action
-    public static final String CPY = "\uE006"; // Copy
-    public static final String PST = "\uE007"; // Paste
-
-    // mode switches (private use chars above 0xE100)
-    public static final String SYM = "\uE101"; // extra symbols
-    public static final String LET = "\uE102"; // lowercase letters
-    public static final String NUM = "\uE103"; // numbers and basic symbols
-    public static final String CAP = "\uE104"; // Single cap (then return to lowercase)
-    public static final String LOK = "\uE105"; // Lock caps
-    public static final String AC1 = "\uE106"; // Accents 1
-    public static final String AC2 = "\uE107"; // Accents 2
-    public static final String CHM = "\uE108"; // Mode list
-    public static final String EMO = "\uE109"; // Emoji: general
-    public static final String GRE = "\uE110"; // Greek
-    public static final String FLG = "\uE111"; // Emoji: flags
-
-
-    private static final String[][] sLowerLetters = { // LET
-            {"t","c",nul,  "q","h","j",  nul,"b","e"},
-            {"d",".",nul,  nul,"u",nul,  nul,",","s"},
-            {nul,nul,CPY,  SER,nul,nul,  PST,nul,nul},
-
-            {"'",nul,nul,  ARL,RET,ARR,  nul,nul,"\""},
-            {"i","k",nul,  NUM," ",CAP,  nul,"w","a"},
-            {"p",nul,nul,  ARU,BAK,ARD,  nul,nul,"l"},
-
-            {nul,nul,nul,  CHM,nul,nul,  "@",nul,nul},
-            {"x",":",nul,  "!","y","?",  nul,"/","z"},
-            {"o","v","-",  "m","n","g",  nul,"f","r"},
-    };
-    private static final String[][] sUpperLetters = { // CAP
-            {"T","C",nul,  "Q","H","J",  nul,"B","E"},
-            {"D",".",nul,  nul,"U",nul,  nul,",","S"},
-            {nul,nul,CPY,  SER,nul,nul,  PST,nul,nul},
-
-            {"'",nul,nul,  ARL,RET,ARR,  nul,nul,"\""},
-            {"I","K",nul,  NUM," ",LOK,  nul,"W","A"},
-            {"P",nul,nul,  ARU,BAK,ARD,  nul,nul,"L"},
-
-            {nul,nul,nul,  CHM,nul,nul,  "@",nul,nul},
-            {"X",":",nul,  "!","Y","?",  nul,"/","Z"},
-            {"O","V","-",  "M","N","G",  nul,"F","R"},
-    };
-    private static final String[][] sCapsLockLetters = { // LOK
-            {"T","C",nul,  "Q","H","J",  nul,"B","E"},
-            {"D",".",nul,  nul,"U",nul,  nul,",","S"},
-            {nul,nul,CPY,  SER,nul,nul,  PST,nul,nul},
-
-            {"'",nul,nul,  ARL,RET,ARR,  nul,nul,"\""},
-            {"I","K",nul,  NUM," ",LET,  nul,"W","A"},
-            {"P",nul,nul,  ARU,BAK,ARD,  nul,nul,"L"},
-
-            {nul,nul,nul,  CHM,nul,nul,  "@",nul,nul},
-            {"X",":",nul,  "!","Y","?",  nul,"/","Z"},
-            {"O","V","-",  "M","N","G",  nul,"F","R"},
-    };
-    private static final String[][] sNumeric = { // NUM
-            {"1","=",nul,  nul,"3",nul,  nul,"_","5"},
-            {"2",nul,nul,  nul,"4",nul,  nul,nul,"6"},
-            {"#","×","%",  nul,nul,nul,  "‹","›","÷"},
-
-            {"~",nul,nul,  ARL,RET,ARR,  nul,nul,nul},
-            {"7",".",nul,  CAP," ",LET,  nul,",","0"},
-            {"8",nul,nul,  ARU,BAK,ARD,  nul,nul,"9"},
-
-            {nul,nul,nul,  CHM,nul,nul,  "@",nul,nul},
-            {"[","|","&",  ":","/",";",  nul,"\\","]"},
-            {"(","{","<",  "-","+","*",  ">","}",")"},
-    };
-    private static final String[][] sAccents1 = { // AC1
-            {"à","á","â",  "è","é","ê",  "ì","í","î"},
-            {"ã","ä","å",  "ë","ė","ě",  "ï","ĩ","ī"},
-            {"æ","ą","ă",  "ǽ","œ","ę",  "ĭ","į","ı"},
-
-            {"ò","ó","ô",  ARL,RET,ARR,  "ù","ú","û"},
-            {"õ","ö","ø",  AC2," ",LET,  "ü","ũ","ū"},
-            {"ō","ŏ","ő",  ARU,BAK,ARD,  "ŭ","ů","ű"},
-
-            {"ń","ñ","ŋ",  "ć","ĉ","ċ",  "ķ","ĸ","Þ"},
-            {"ŉ","ň","ņ",  "č","ç","đ",  "ß","ţ","ť"},
-            {"ğ","ĝ","ģ",  "ĥ","ħ","ð",  "ý","ÿ","ŷ"},
-    };
-    private static final String[][] sAccents2 = { // AC2
-            {"À","Á","Â",  "È","É","Ê",  "Ì","Í","Î"},
-            {"Ã","Ä","Å",  "Ë","Ė","Ě",  "Ï","Ĩ","Ī"},
-            {"Æ","Ą","Ă",  "Ǽ","Œ","Ę",  "Ĭ","Į","I"},
-
-            {"Ò","Ó","Ô",  ARL,RET,ARR,  "Ù","Ú","Û"},
-            {"Õ","Ö","Ø",  AC1," ",LET,  "Ü","Ũ","Ū"},
-            {"Ō","Ŏ","Ő",  ARU,BAK,ARD,  "Ŭ","Ů","Ű"},
-
-            {"ź","ż","ž",  "α","β","γ",  "Α","Β","Γ"},
-            {"ś","ŝ","ş",  "σ","θ","λ",  "Σ","Θ","Λ"},
-            {"š","ſ","ƒ",  "φ","ω","Φ",  "Φ","Ω","φ"},
-    };
-
-    private static final String[][] sSymbols = { // SYM
-            {"$","€","£",  "³","²","¹",  "≤","≥","≠"},
-            {"¢","¥","₧",  "•","●","ⁿ",  "≈","∫","∞"},
-            {"±","°","µ",  "□","▪","◊",  "∂","∆","∑"},
-
-            {"¤","’","^",  ARL,RET,ARR,  "º","ª","®"},
-            {"”","¬","¦",  NUM," ",LET,  "«","»","©"},
-            {"√","·","`",  ARU,BAK,ARD,  "¿","¡","¶"},
-
-            {"⅜","½","⅝",  "↖","↑","↗",  "⅓","⅔","⅕"},
-            {"¼","∕","¾",  "←","Ω","→",  "⅖","⅗","⅘"},
-            {"⅛","∛","⅞",  "↙","↓","↘",  "⅐","⅑","⅒"},
-    };
-
-    private static final String[][] sGreek = { // GRE
-            {"Α","Β","Γ",  "Δ","Ε","Ζ",  "Η","Θ","Ι"},
-            {"Κ","Λ","Μ",  "Ν","Ξ","Ο",  "Π","Ρ","Σ"},
-            {"Τ","Υ","Φ",  "Χ","Ψ","Ω",  "Ϙ","Ϝ","ϝ"},
-
-            {"Ϊ","Ϋ","ά",  ARL,RET,ARR,  "έ","ή","ί"},
-            {"ΰ","ϊ","ϋ",  NUM," ",LET,  "ό","ύ","ώ"},
-            {"Ͻ","Ͼ","Ͽ",  ARU,BAK,ARD,  "ϰ","ϛ","Ϛ"},
-
-            {"α","β","γ",  "δ","ε","ζ",  "η","θ","ι"},
-            {"κ","λ","μ",  "ν","ξ","ο",  "π","ρ","ς"},
-            {"σ","τ","υ",  "φ","χ","ψ",  "ω","ϕ","ϙ"},
-    };
-
-    private static final String[][] sEmoji = { // EMO
-            {Emoji.NoFace,Emoji.BigGrin,Emoji.Grin,          Emoji.Phew,Emoji.LoveFace,Emoji.KissFace,       Emoji.LookEyes,Emoji.SkullFace,Emoji.BigCry},
-            {Emoji.BigSmile,Emoji.AngryFace,Emoji.Eyebrow,   Emoji.CowBoy,Emoji.CrossEye,Emoji.Puke,         Emoji.Ninja,Emoji.RobotFace,Emoji.FearFace},
-            {Emoji.Rofl,Emoji.Smile,Emoji.Wink,              Emoji.Weary,Emoji.SwearFace,Emoji.RageFace,     Emoji.Brain,Emoji.Muscle,Emoji.ShitFace},
-
-            {Emoji.Wrench,Emoji.Warning,Emoji.Radioactive,   ARL,RET,ARR,                                    Emoji.Toilet,Emoji.Runner,Emoji.Magician},
-            {Emoji.Speech,Emoji.NoEntry,Emoji.BioHazard,     NUM,Emoji.ThumbUp,LET,                          Emoji.UpArrow,Emoji.TwoHearts,Emoji.Superhero},
-            {Emoji.ThumbDown,Emoji.Denied,Emoji.WTF,         ARU,BAK,ARD,                                    Emoji.GoBack,Emoji.Zombie,Emoji.Fairy},
-
-            {Emoji.PadLock1,Emoji.PaperClip,Emoji.Pencil,    Emoji.Camera,Emoji.FloppyDisk,Emoji.Controls,   Emoji.Landing,Emoji.TakeOff,Emoji.Rocket},
-            {Emoji.PadLock2,Emoji.TrashBin,Emoji.Package,    Emoji.Bell,Emoji.Ribbon,Emoji.GiftBox,          Emoji.Planet,Emoji.Construction,Emoji.GearWheel},
-            {Emoji.PadLock3,Emoji.Tools,Emoji.Calendar,      Emoji.WorldMap,Emoji.WarnLight,Emoji.Pitard,    Emoji.FuelPump,Emoji.MiniBusVan,Emoji.FastBike},
-    };
-
-    private static final String[][] sFlags = { // FLG
-            {Flags.ChequeredFlag,Flags.BlackFlag,Flags.WhiteFlag,          Flags.UnitedNations,Flags.Antarctica,Flags.EuropeanUnion,       Flags.England,Flags.Scotland,Flags.UnitedKingdom},
-            {Flags.PirateFlag,nul,nul,                                     Flags.Spain,nul,Flags.Ukraine,                                  nul,nul,Flags.Wales},
-            {nul,nul,nul,                                                  nul,nul,nul,                                                    nul,nul,Flags.Ireland},
-
-            {nul,Flags.Ghana,nul,   ARL,RET,ARR,    nul,Flags.Australia,Flags.UnitedStates},
-            {nul,Flags.Kenya,nul,                NUM," ",LET,    nul,nul,nul},
-            {Flags.Tanzania,Flags.Gambia,nul,    ARU,BAK,ARD,    nul,Flags.NewZealand,Flags.Canada},
-
-            {nul,nul,nul,   nul,nul,nul,   nul,nul,nul},
-            {nul,nul,nul,   nul,nul,nul,   nul,nul,nul},
-            {nul,nul,nul,   nul,nul,nul,   nul,nul,nul},
-    };
-
-    private static final String[][] sChangeMode = { // CHM
-            {SYM,nul,nul,  nul,AC1,nul,  nul,nul,AC2},
-            {nul,nul,nul,  nul,nul,nul,  nul,nul,nul},
-            {nul,nul,nul,  nul,nul,nul,  nul,nul,nul},
-
-            {nul,nul,nul,  nul,nul,nul,  nul,nul,nul},
-            {LOK,nul,nul,  nul,LET,nul,  nul,nul,CAP},
-            {nul,nul,nul,  nul,nul,nul,  nul,nul,nul},
-
-            {nul,nul,nul,  nul,nul,nul,  nul,nul,nul},
-            {nul,nul,nul,  nul,nul,nul,  nul,nul,nul},
-            {EMO,FLG,nul,  nul,NUM,nul,  nul,nul,GRE},
-    };
-
-
-    // Note: we could maybe do a 'Unicode pages' mode that moves the base forward/back and just scrolls through everything
-
-    private static String sCurrentMode = LET;
-
-    public static String[][] CurrentLayout(){
-        switch (sCurrentMode){
-            case LET: return sLowerLetters;
-            case CAP: return sUpperLetters;
-            case LOK: return sCapsLockLetters;
-            case NUM: return sNumeric;
-
-            case CHM: return sChangeMode;
-            case AC1: return sAccents1;
-            case AC2: return sAccents2;
-            case SYM: return sSymbols;
-            case EMO: return sEmoji;
-            case FLG: return sFlags;
-            case GRE: return sGreek;
-
-            default:// any wrong modes, flip back to default
-                sCurrentMode = LET;
-                return sLowerLetters;
-        }
-    }
-
-    /**
-     * Change current layout based on a mode character
-     */
-    public static void SwitchMode(String c) {
-        if (!IsInternal(c)) return;
-        sCurrentMode = c;
-    }
-
-    /**
-     * Returns true if the key is a single character key
-     */
-    public static boolean IsSimple(String s) {
-        char c = s.charAt(0);
-        return (c > 31 && c < 0xE000);
-    }
-
-    /**
-     * Returns true if the character is a mode-change character (no keyboard output)
-     */
-    public static boolean IsInternal(String s) {
-        char c = s.charAt(0);
-        return (c >= 0xE100);
-    }
-
-    public static String Visualise(String c){
-        if (IsSimple(c)) return c;
-
-        switch (c){
-            case nul: return "";
-
-            case RET: return "↲";
-            case SYM: return "Sym";
-            case CAP: return "Abc";
-            case LOK: return "ABC";
-            case LET: return "abc";
-            case NUM: return "123";
-            case AC1: return "äŋç";
-            case AC2: return "ÃΣØ";
-            case GRE: return "Αβγ";
-            case CHM: return "mode";
-            case EMO: return "\uD83E\uDD28"; // smile face
-            case FLG: return "\uD83C\uDFC1"; // chequered flag
-            case BAK: return "⇦";
-            case SER: return "\uD83D\uDD0D"; // magnifying glass icon
-            case CPY: return " ⎘"; // next-page icon
-            case PST: return "\uD83D\uDCCB"; // clipboard icon
-
-            case ARD: return "↓";
-            case ARU: return "↑";
-            case ARL: return "←";
-            case ARR: return "→";
-
-            default: return "⁇";
-        }
-    }
-
-    /**
-     * register a press start at a given location index
-     * @param xi x index 0..2
-     * @param yi y index 0..2
-     */
-    public static void TouchDown(int xi, int yi)
-    {
-        if (xi >= 0 && xi < 3) sQuadrantX = xi * 3;
-        else if (xi >= 3) sQuadrantX = 9; // allow running off the end?
-        else sQuadrantX = 0;
-
-
-        if (yi >= 0 && yi < 3) sQuadrantY = yi * 3;
-        else if (yi >= 3) sQuadrantX = 9;
-        else sQuadrantY = 0;
-    }
-
-    public static int sQuadrantY = 0;
-    public static int sQuadrantX = 0;
-
-    /**
-     * register a release of a touch at a given location index.
-     * This may change the current layout, and it may return a character
-     * @param xi x index 0..2
-     * @param yi y index 0..2
-     */
-    public static String TouchUp(int xi, int yi){
-        if (sQuadrantX < 0) return nul;
-        if (sQuadrantY < 0) return nul;
-
-        // try limiting rather than rejecting?
-        if (xi<0) xi=0; if (xi >=3) xi=2;
-        if (yi<0) yi=0; if (yi >=3) yi=2;
-
-        int qy = sQuadrantY;
-        int qx = sQuadrantX;
-        String result = CurrentLayout()[qy+yi][qx+xi];
-
-        // Drop out of single-cap mode, unless we just pressed space
-        if (Objects.equals(sCurrentMode, CAP) && (!Objects.equals(result, " "))) sCurrentMode = LET;
-
-        return result;
-    }
-
-    private static final int[] NoKey = new int[]{-1,-1};
-
-    /**
-     * Returns a keycode at [0] and meta state at [1] for a special key
-     */
-    public static int[] GetSpecialKey(String c) {
-        switch (c){
-            case RET: return new int[]{KEYCODE_ENTER, 0};
-            case BAK: return new int[]{KEYCODE_DEL, 0};
-
-            case SER: return new int[]{KEYCODE_SEARCH, 0}; // Some inputs won't accept return.
-            case CPY: return new int[]{278/*KEYCODE_COPY*/, 0}; // copy
-            case PST: return new int[]{279/*KEYCODE_PASTE*/, 0}; // paste
-            /* KEYCODE_CUT = 277 */
-
-            case ARD: return new int[]{KEYCODE_DPAD_DOWN, 0};
-            case ARU: return new int[]{KEYCODE_DPAD_UP, 0};
-            case ARL: return new int[]{KEYCODE_DPAD_LEFT, 0};
-            case ARR: return new int[]{KEYCODE_DPAD_RIGHT, 0};
-
-            default: return NoKey;
-        }
-    }
-}
+package rkr.simplekeyboard.inputmethod.keyboard;
+import static android.view.KeyEvent.*;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+import rkr.simplekeyboard.inputmethod.keyboard.internal.CharacterPredictor;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.EmojiCatalogue;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.EmojiPages;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.EmojiSearch;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.GlyphIndex;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.RecentOutputs;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.UnicodePages;
+import rkr.simplekeyboard.inputmethod.latin.common.Constants;
+
+public class KeyboardLayout {
+    private static final String TAG = KeyboardLayout.class.getSimpleName();
+
+    public static final String nul = "\0";
+    public static final String RET = "\n";
+    public static final String BAK = "\u0008";
+
+    // arrows, other special buttons (private use chars below 0xE100)
+    public static final String ARR = "\uE001";
+    public static final String ARL = "\uE002";
+    public static final String ARU = "\uE003";
+    public static final String ARD = "\uE004";
+    public static final String SER = "\uE005"; // search action
+    public static final String CPY = "\uE006"; // Copy
+    public static final String PST = "\uE007"; // Paste
+    public static final String PGP = "\uE008"; // Previous page (Unicode pages)
+    public static final String PGN = "\uE009"; // Next page (Unicode pages)
+    public static final String GRP = "\uE00A"; // Next emoji group
+    public static final String FND = "\uE00B"; // Start an emoji search
+    // Completions of the word being typed, in free cells of the letter layouts
+    public static final String CP1 = "\uE00C";
+    public static final String CP2 = "\uE00D";
+    public static final String CP3 = "\uE00E";
+    public static final String CP4 = "\uE00F";
+
+    // mode switches (private use chars above 0xE100)
+    public static final String SYM = "\uE101"; // extra symbols
+    public static final String LET = "\uE102"; // lowercase letters
+    public static final String NUM = "\uE103"; // numbers and basic symbols
+    public static final String CAP = "\uE104"; // Single cap (then return to lowercase)
+    public static final String LOK = "\uE105"; // Lock caps
+    public static final String AC1 = "\uE106"; // Accents 1
+    public static final String AC2 = "\uE107"; // Accents 2
+    public static final String CHM = "\uE108"; // Mode list
+    public static final String EMO = "\uE109"; // Emoji: general
+    public static final String GRE = "\uE110"; // Greek
+    public static final String FLG = "\uE111"; // Emoji: flags
+    public static final String UNI = "\uE112"; // Unicode pages
+    public static final String ESR = "\uE113"; // Emoji search results
+    public static final String REC = "\uE114"; // Most used emoji and symbols
+
+
+    // Layouts are compiled from app/src/main/layouts by the layouttools LayoutCompiler.
+    private static final String LAYOUTS_ASSET = "layouts.bin";
+    private static final int LAYOUTS_MAGIC = 0x4B394C59; // "K9LY"
+    private static final int LAYOUTS_VERSION = 2;
+    // Mode flag: the cells are made at runtime rather than read from the layouts.
+    private static final int FLAG_GENERATED = 1;
+    private static final int SIZE = 9;
+    private static final String[][] sEmptyLayout = new String[SIZE][SIZE];
+    static {
+        for (String[] row : sEmptyLayout) Arrays.fill(row, nul);
+    }
+    // Centre quadrant of the Unicode pages.
+    private static final String[][] sUnicodePagesCentre = {
+            {PGP,RET,PGN},
+            {NUM," ",LET},
+            {ARL,BAK,ARR},
+    };
+    // Centre quadrants of the emoji and flag pages.
+    private static final String[][] sEmojiPagesCentre = {
+            {PGP,RET,PGN},
+            {FND," ",LET},
+            {GRP,BAK,FLG},
+    };
+    private static final String[][] sFlagPagesCentre = {
+            {PGP,RET,PGN},
+            {NUM," ",LET},
+            {EMO,BAK,CHM},
+    };
+    private static final String[][] sSearchResultsCentre = {
+            {PGP,RET,PGN},
+            {FND," ",LET},
+            {EMO,BAK,FLG},
+    };
+    // Centre quadrant of the recent page, which is only ever one page long.
+    private static final String[][] sRecentCentre = {
+            {ARL,RET,ARR},
+            {NUM," ",LET},
+            {EMO,BAK,SYM},
+    };
+    private static final String[] sCompletionSlots = {CP1, CP2, CP3, CP4};
+    /** The most completions shown at once. */
+    public static final int MAX_COMPLETIONS = 4;
+    // The rows either side of the centre band, whose empty cells take the completions
+    private static final int[] sCompletionRows = {2, 6};
+    private static final EmojiPages sEmojiPages = new EmojiPages(false);
+    private static final EmojiPages sFlagPages = new EmojiPages(true);
+
+    // Per mode: the code that switches to it, its label, and its cells as code points, or as
+    // ~index into the string pool for longer text.
+    private static int[] sModeCodes = new int[0];
+    private static String[] sModeLabels = new String[0];
+    private static int[] sModeFlags = new int[0];
+    private static int[][] sModeCells = new int[0][];
+    private static String[] sStringPool = new String[0];
+    // Cell strings, made the first time each mode is shown.
+    private static String[][][] sModeTables = new String[0][][];
+
+    /**
+     * Load the layouts from the app assets. Only the first call does anything.
+     */
+    public static void init(final Context context) {
+        GlyphIndex.init(context);
+        EmojiCatalogue.init(context);
+        EmojiSearch.init(context);
+        RecentOutputs.init(context);
+        CharacterPredictor.init(context);
+        if (sModeCodes.length > 0) return;
+        try {
+            load(context.getAssets().open(LAYOUTS_ASSET));
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Can't load the keyboard layouts", e);
+        }
+    }
+
+    private static void load(final InputStream in) throws IOException {
+        final byte[] data;
+        try {
+            // One read of the whole asset, then parse it from memory.
+            final ByteArrayOutputStream out =
+                    new ByteArrayOutputStream(Math.max(in.available(), 4096));
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) out.write(buffer, 0, read);
+            data = out.toByteArray();
+        } finally {
+            in.close();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt() != LAYOUTS_MAGIC || buffer.getInt() != LAYOUTS_VERSION) {
+            throw new IOException("Unknown layouts format");
+        }
+        final String[] pool = new String[buffer.getInt()];
+        for (int i = 0; i < pool.length; i++) {
+            final int length = buffer.getInt();
+            pool[i] = new String(data, buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        }
+        final int modeCount = buffer.getInt();
+        final int[] codes = new int[modeCount];
+        final String[] labels = new String[modeCount];
+        final int[] flags = new int[modeCount];
+        final int[][] cells = new int[modeCount][SIZE * SIZE];
+        for (int m = 0; m < modeCount; m++) {
+            codes[m] = buffer.getInt();
+            labels[m] = pool[buffer.getInt()];
+            flags[m] = buffer.getInt();
+            buffer.asIntBuffer().get(cells[m]);
+            buffer.position(buffer.position() + SIZE * SIZE * 4);
+        }
+
+        sStringPool = pool;
+        sModeLabels = labels;
+        sModeFlags = flags;
+        sModeCells = cells;
+        sModeTables = new String[modeCount][][];
+        sModeCodes = codes;
+    }
+
+    private static int IndexOfMode(String modeCode) {
+        final int code = modeCode.codePointAt(0);
+        for (int i = 0; i < sModeCodes.length; i++) {
+            if (sModeCodes[i] == code) return i;
+        }
+        return -1;
+    }
+
+    private static String[][] GetTable(int mode) {
+        if ((sModeFlags[mode] & FLAG_GENERATED) != 0) return GetGeneratedTable(mode);
+
+        String[][] table = sModeTables[mode];
+        if (table != null) return table;
+
+        table = new String[SIZE][SIZE];
+        final int[] cells = sModeCells[mode];
+        for (int i = 0; i < cells.length; i++) {
+            final int cell = cells[i];
+            table[i / SIZE][i % SIZE] =
+                    (cell < 0) ? sStringPool[~cell] : new String(Character.toChars(cell));
+        }
+        sModeTables[mode] = table;
+        return table;
+    }
+
+    private static String[][] GetGeneratedTable(int mode) {
+        final int code = sModeCodes[mode];
+        if (code == UNI.codePointAt(0)) return UnicodePages.getPage(sUnicodePagesCentre, nul);
+        if (code == EMO.codePointAt(0)) return sEmojiPages.getPage(sEmojiPagesCentre, nul);
+        if (code == FLG.codePointAt(0)) return sFlagPages.getPage(sFlagPagesCentre, nul);
+        if (code == ESR.codePointAt(0)) return EmojiSearch.getPage(sSearchResultsCentre, nul);
+        if (code == REC.codePointAt(0)) return RecentOutputs.getPage(sRecentCentre, nul);
+        return sEmptyLayout; // a generated mode this version doesn't know
+    }
+
+    private static String sCurrentMode = LET;
+
+    public static String[][] CurrentLayout(){
+        int mode = IndexOfMode(sCurrentMode);
+        if (mode < 0) {// any wrong modes, flip back to default
+            sCurrentMode = LET;
+            mode = IndexOfMode(LET);
+            if (mode < 0) return sEmptyLayout; // layouts failed to load
+        }
+        if (sCompletions.length > 0 && sSearchQuery == null && IsLetterMode(sCurrentMode)) {
+            return GetCompletionTable(mode);
+        }
+        return GetTable(mode);
+    }
+
+    // Completions of the word being typed, and the letter layout with the slots for them
+    private static String[] sCompletions = new String[0];
+    private static String[][] sCompletionTable;
+    private static int sCompletionTableMode = -1;
+
+    private static boolean IsLetterMode(String mode) {
+        return Objects.equals(mode, LET) || Objects.equals(mode, CAP) || Objects.equals(mode, LOK);
+    }
+
+    /**
+     * A copy of a letter layout with the completion slots in its first free cells
+     */
+    private static String[][] GetCompletionTable(int mode) {
+        if (sCompletionTableMode == mode) return sCompletionTable;
+        final String[][] table = GetTable(mode);
+        final String[][] copy = new String[SIZE][];
+        for (int y = 0; y < SIZE; y++) copy[y] = table[y].clone();
+        int slot = 0;
+        for (int y : sCompletionRows) {
+            for (int x = 0; x < SIZE && slot < MAX_COMPLETIONS; x++) {
+                if (Objects.equals(copy[y][x], nul)) copy[y][x] = sCompletionSlots[slot++];
+            }
+        }
+        sCompletionTable = copy;
+        sCompletionTableMode = mode;
+        return copy;
+    }
+
+    /**
+     * Set the completions of the word being typed, most likely first.
+     * Returns the cells (as y * 9 + x) that now show something different.
+     */
+    public static int[] SetCompletions(String[] completions) {
+        final String[][] before = CurrentLayout();
+        final String[] old = new String[SIZE * SIZE];
+        for (int i = 0; i < old.length; i++) old[i] = Visualise(before[i / SIZE][i % SIZE]);
+
+        sCompletions = completions.length > MAX_COMPLETIONS
+                ? Arrays.copyOf(completions, MAX_COMPLETIONS) : completions;
+
+        final String[][] after = CurrentLayout();
+        int[] changed = new int[SIZE * SIZE];
+        int count = 0;
+        for (int i = 0; i < old.length; i++) {
+            if (!old[i].equals(Visualise(after[i / SIZE][i % SIZE]))) changed[count++] = i;
+        }
+        return Arrays.copyOf(changed, count);
+    }
+
+    /**
+     * Returns the completion a slot key shows, or null if the key isn't a slot or is empty
+     */
+    public static String GetCompletion(String c) {
+        for (int i = 0; i < sCompletionSlots.length; i++) {
+            if (Objects.equals(c, sCompletionSlots[i])) {
+                return i < sCompletions.length ? sCompletions[i] : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Change current layout based on a mode character
+     */
+    public static void SwitchMode(String c) {
+        if (!IsInternal(c)) return;
+        if (Objects.equals(c, REC) && !Objects.equals(sCurrentMode, REC)) RecentOutputs.refresh();
+        sCurrentMode = c;
+        sIsAutoCap = false;
+    }
+
+    // True while single-cap mode was switched on by auto-capitalisation rather than by hand
+    private static boolean sIsAutoCap = false;
+
+    /**
+     * Switch single-cap mode on for auto-capitalisation, from lower case letters only, or back
+     * off again if it was switched on that way. Returns true if the mode changed.
+     */
+    public static boolean SetAutoCaps(boolean isCapsNeeded) {
+        if (isCapsNeeded && Objects.equals(sCurrentMode, LET) && sSearchQuery == null) {
+            sCurrentMode = CAP;
+            sIsAutoCap = true;
+            return true;
+        }
+        if (!isCapsNeeded && sIsAutoCap && Objects.equals(sCurrentMode, CAP)) {
+            sCurrentMode = LET;
+            sIsAutoCap = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the current layout is a page of emoji or flags
+     */
+    public static boolean IsEmojiPage() {
+        return Objects.equals(sCurrentMode, EMO) || Objects.equals(sCurrentMode, FLG)
+                || Objects.equals(sCurrentMode, ESR) || Objects.equals(sCurrentMode, REC);
+    }
+
+    /**
+     * Returns true if the key is a single character key
+     */
+    public static boolean IsSimple(String s) {
+        char c = s.charAt(0);
+        return (c > 31 && c < 0xE000) || c >= 0xF900;
+    }
+
+    /**
+     * Returns true if the character is a mode-change character (no keyboard output)
+     */
+    public static boolean IsInternal(String s) {
+        char c = s.charAt(0);
+        return (c >= 0xE100 && c < 0xF900); // private use area only
+    }
+
+    public static String Visualise(String c){
+        if (sSearchQuery != null) { // return runs the search, and space shows what is typed
+            if (Objects.equals(c, RET)) return "\uD83D\uDD0E";
+            if (Objects.equals(c, " ")) return "[" + sSearchQuery + "]";
+        }
+        if (IsSimple(c)) return c;
+        if (c.charAt(0) >= CP1.charAt(0) && c.charAt(0) <= CP4.charAt(0)) {
+            final String completion = GetCompletion(c);
+            return (completion == null) ? "" : completion;
+        }
+        if (IsInternal(c)) { // mode switches show the label from the layout file
+            final int mode = IndexOfMode(c);
+            return (mode < 0) ? "⁇" : sModeLabels[mode];
+        }
+
+        switch (c){
+            case nul: return "";
+
+            case RET: return "↲";
+            case BAK: return "⇦";
+            case SER: return "\uD83D\uDD0D"; // magnifying glass icon
+            case CPY: return " ⎘"; // next-page icon
+            case PST: return "\uD83D\uDCCB"; // clipboard icon
+            case PGP: return "⇞";
+            case PGN: return "⇟";
+            case GRP: return sEmojiPages.getNextGroupLabel();
+            case FND: return "\uD83D\uDD0E"; // magnifying glass, tilted right
+
+            case ARD: return "↓";
+            case ARU: return "↑";
+            case ARL: return "←";
+            case ARR: return "→";
+
+            default: return "⁇";
+        }
+    }
+
+    /**
+     * register a press start at a given location index
+     * @param xi x index 0..2
+     * @param yi y index 0..2
+     */
+    public static void TouchDown(int xi, int yi)
+    {
+        if (xi >= 0 && xi < 3) sQuadrantX = xi * 3;
+        else if (xi >= 3) sQuadrantX = 9; // allow running off the end?
+        else sQuadrantX = 0;
+
+
+        if (yi >= 0 && yi < 3) sQuadrantY = yi * 3;
+        else if (yi >= 3) sQuadrantX = 9;
+        else sQuadrantY = 0;
+
+        // Once per press, so drawing the zoomed in view only reads the result
+        CharacterPredictor.predict(CurrentLayout(), sQuadrantX, sQuadrantY);
+    }
+
+    public static int sQuadrantY = 0;
+    public static int sQuadrantX = 0;
+
+    /**
+     * register a release of a touch at a given location index.
+     * This may change the current layout, and it may return a character
+     * @param xi x index 0..2
+     * @param yi y index 0..2
+     */
+    public static String TouchUp(int xi, int yi){
+        if (sQuadrantX < 0) return nul;
+        if (sQuadrantY < 0) return nul;
+
+        // try limiting rather than rejecting?
+        if (xi<0) xi=0; if (xi >=3) xi=2;
+        if (yi<0) yi=0; if (yi >=3) yi=2;
+
+        int qy = sQuadrantY;
+        int qx = sQuadrantX;
+        String mode = sCurrentMode;
+        String result = CurrentLayout()[qy+yi][qx+xi];
+
+        // Page keys are handled here, the new page shows on the redraw after release
+        if (Objects.equals(result, PGP)) { PreviousPage(); return nul; }
+        if (Objects.equals(result, PGN)) { NextPage(); return nul; }
+        if (Objects.equals(result, GRP)) { sEmojiPages.nextGroup(); return nul; }
+        if (Objects.equals(result, FND)) { sSearchQuery = new StringBuilder(); sCurrentMode = LET; return nul; }
+
+        // Drop out of single-cap mode, unless we just pressed space
+        if (Objects.equals(sCurrentMode, CAP) && (!Objects.equals(result, " "))) sCurrentMode = LET;
+
+        if (TypeSearch(result)) return nul;
+
+        if (IsRecentMode(mode) && IsSimple(result) && !Objects.equals(result, " ")) {
+            RecentOutputs.use(result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns true if what is typed in the mode goes on the recent page: everything but letters,
+     * numbers and the basic punctuation, which are always a mode switch away.
+     */
+    private static boolean IsRecentMode(String mode) {
+        switch (mode) {
+            case EMO: case FLG: case ESR: case REC:
+            case SYM: case AC1: case AC2: case GRE: case UNI:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // The emoji search being typed, or null when not searching
+    private static StringBuilder sSearchQuery = null;
+
+    /**
+     * While an emoji search is being typed, text goes to the query instead of the editor, and
+     * return shows the results. Mode switches keep the search going, other keys end it.
+     * Returns true if the key was used by the search.
+     */
+    private static boolean TypeSearch(String c) {
+        if (sSearchQuery == null || Objects.equals(c, nul) || IsInternal(c)) return false;
+
+        if (Objects.equals(c, RET)) {
+            EmojiSearch.search(sSearchQuery.toString());
+            sSearchQuery = null;
+            sCurrentMode = ESR;
+            return true;
+        }
+        if (Objects.equals(c, BAK)) {
+            int length = sSearchQuery.length();
+            if (length == 0) sSearchQuery = null; // backspace on an empty search cancels it
+            else sSearchQuery.setLength(length - 1);
+            return true;
+        }
+        if (IsSimple(c)) {
+            char ch = c.charAt(0);
+            int length = sSearchQuery.length();
+            if (c.length() == 1 && Character.isLetterOrDigit(ch)) {
+                sSearchQuery.append(Character.toLowerCase(ch));
+            } else if (ch == ' ' && length > 0 && sSearchQuery.charAt(length - 1) != ' ') {
+                sSearchQuery.append(' ');
+            }
+            return true; // punctuation can't be searched for, drop it
+        }
+
+        sSearchQuery = null;
+        return false;
+    }
+
+    private static void PreviousPage() {
+        if (Objects.equals(sCurrentMode, UNI)) UnicodePages.previousPage();
+        else if (Objects.equals(sCurrentMode, EMO)) sEmojiPages.previousPage();
+        else if (Objects.equals(sCurrentMode, FLG)) sFlagPages.previousPage();
+        else if (Objects.equals(sCurrentMode, ESR)) EmojiSearch.previousPage();
+    }
+
+    private static void NextPage() {
+        if (Objects.equals(sCurrentMode, UNI)) UnicodePages.nextPage();
+        else if (Objects.equals(sCurrentMode, EMO)) sEmojiPages.nextPage();
+        else if (Objects.equals(sCurrentMode, FLG)) sFlagPages.nextPage();
+        else if (Objects.equals(sCurrentMode, ESR)) EmojiSearch.nextPage();
+    }
+
+    private static final int[] NoKey = new int[]{-1,-1};
+
+    /**
+     * Returns the code whose keypress sound a key plays: one of the delete, enter and space
+     * codes, or NOT_A_CODE for the standard sound
+     */
+    public static int GetFeedbackCode(String c) {
+        switch (c){
+            case BAK: return Constants.CODE_DELETE;
+            case RET: return Constants.CODE_ENTER;
+            case " ": return Constants.CODE_SPACE;
+            default: return Constants.NOT_A_CODE;
+        }
+    }
+
+    /**
+     * Returns a keycode at [0] and meta state at [1] for a special key
+     */
+    public static int[] GetSpecialKey(String c) {
+        switch (c){
+            case RET: return new int[]{KEYCODE_ENTER, 0};
+            case BAK: return new int[]{KEYCODE_DEL, 0};
+
+            case SER: return new int[]{KEYCODE_SEARCH, 0}; // Some inputs won't accept return.
+            case CPY: return new int[]{278/*KEYCODE_COPY*/, 0}; // copy
+            case PST: return new int[]{279/*KEYCODE_PASTE*/, 0}; // paste
+            /* KEYCODE_CUT = 277 */
+
+            case ARD: return new int[]{KEYCODE_DPAD_DOWN, 0};
+            case ARU: return new int[]{KEYCODE_DPAD_UP, 0};
+            case ARL: return new int[]{KEYCODE_DPAD_LEFT, 0};
+            case ARR: return new int[]{KEYCODE_DPAD_RIGHT, 0};
+
+            default: return NoKey;
+        }
+    }
+}
@@ -19,8 +19,11 @@ package rkr.simplekeyboard.inputmethod.keyboard;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.ContextWrapper;
+import android.content.res.Configuration;
 import android.view.LayoutInflater;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
 
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardParams;
@@ -28,13 +31,19 @@ import rkr.simplekeyboard.inputmethod.latin.InputView;
 import rkr.simplekeyboard.inputmethod.latin.LatinIME;
 import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
 
+import static android.content.res.Configuration.UI_MODE_NIGHT_MASK;
 import static android.content.res.Configuration.UI_MODE_NIGHT_NO;
 import static android.content.res.Configuration.UI_MODE_NIGHT_YES;
 
 public final class KeyboardLoader {
+    private InputView mCurrentInputView;
+    private int mInputViewDensityDpi;
+    private int mInputViewNightMode;
     private View mMainKeyboardFrame;
     private MainKeyboardView mKeyboardView;
     private LatinIME mLatinIME;
+    // The service the input view was inflated for; its context and listener are that service.
+    private LatinIME mInputViewOwner;
 
     @SuppressLint("StaticFieldLeak")
     private static final KeyboardLoader sInstance = new KeyboardLoader();
@@ -53,6 +62,13 @@ public final class KeyboardLoader {
 
     private void initInternal(final LatinIME latinIme) {
         mLatinIME = latinIme;
+        // This loader outlives the service when the IME is switched away from and back in the
+        // same process. The old views were inflated for, and send input to, the old service.
+        mCurrentInputView = null;
+        mMainKeyboardFrame = null;
+        mKeyboardView = null;
+        mInputViewOwner = null;
+        KeyboardLayout.init(latinIme);
     }
 
     public void updateKeyboardTheme(final int uiMode) {
@@ -115,14 +131,35 @@ public final class KeyboardLoader {
             mKeyboardView.closing();
         }
 
+        final Configuration conf = mLatinIME.getResources().getConfiguration();
+        if (mCurrentInputView != null && canReuseInputView(conf)) {
+            // The framework asks again on most configuration changes, but only density and theme
+            // changes affect what was inflated. Hand back the same views, detached from the
+            // window they were in.
+            final ViewParent parent = mCurrentInputView.getParent();
+            if (parent instanceof ViewGroup) {
+                ((ViewGroup) parent).removeView(mCurrentInputView);
+            }
+            return mCurrentInputView;
+        }
+
         Context ctx = new ContextWrapper(mLatinIME);
 
-        InputView mCurrentInputView = (InputView) LayoutInflater.from(ctx).inflate(
+        mCurrentInputView = (InputView) LayoutInflater.from(ctx).inflate(
                 R.layout.input_view, null);
+        mInputViewDensityDpi = conf.densityDpi;
+        mInputViewNightMode = conf.uiMode & UI_MODE_NIGHT_MASK;
+        mInputViewOwner = mLatinIME;
         mMainKeyboardFrame = mCurrentInputView.findViewById(R.id.main_keyboard_frame);
 
         mKeyboardView = mCurrentInputView.findViewById(R.id.keyboard_view);
         mKeyboardView.setKeyboardActionListener(mLatinIME);
         return mCurrentInputView;
     }
+
+    private boolean canReuseInputView(final Configuration conf) {
+        return mInputViewOwner == mLatinIME
+                && conf.densityDpi == mInputViewDensityDpi
+                && (conf.uiMode & UI_MODE_NIGHT_MASK) == mInputViewNightMode;
+    }
 }
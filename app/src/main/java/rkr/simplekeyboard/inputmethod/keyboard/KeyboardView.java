@@ -27,8 +27,10 @@ import android.view.View;
 
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.compat.PreferenceManagerCompat;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.CharacterPredictor;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardParams;
 import rkr.simplekeyboard.inputmethod.latin.settings.Settings;
+import rkr.simplekeyboard.inputmethod.latin.utils.StartupTrace;
 
 /**
  * A view that renders a virtual {@link KeyboardParams}.
@@ -120,6 +122,7 @@ public class KeyboardView extends View {
 
         if (metrics == null) metrics = getResources().getDisplayMetrics();
         onDrawKeyboard(canvas);
+        StartupTrace.markFirstDraw();
     }
 
     protected float mLastTouchX = 0.0f;
@@ -198,10 +201,23 @@ public class KeyboardView extends View {
         // Light colors
         int mainFontColor = 0xFF_00_00_7F;
         int modeFontColor = 0xFF_80_80_80;
+        int likelyCellColor = 0xFF_F0_F4_E8;
 
         if (mDarkColors) {
             mainFontColor = 0xFF_7F_7F_FF;
             //modeFontColor = 0xFF_80_80_80;
+            likelyCellColor = 0xFF_18_20_10;
+        }
+
+        // Tint the cells likely to be typed next, worked out when the press started
+        paint.setColor(likelyCellColor);
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 3; x++) {
+                if (!CharacterPredictor.isLikely(x, y)) continue;
+                int lx = left + x * oneThirdWidth;
+                int ly = top + y * oneThirdHeight;
+                canvas.drawRect(lx + 1, ly + 1, lx + oneThirdWidth - 1, ly + oneThirdHeight - 1, paint);
+            }
         }
 
         // Draw zoomed view
@@ -218,20 +234,12 @@ public class KeyboardView extends View {
                 if (x + qx >= layout[y + qy].length) continue;
 
                 String desc = KeyboardLayout.Visualise(layout[y + qy][x + qx]);
-
-                if (desc.length() > 1) {
-                    paint.setColor(modeFontColor);
-                    paint.setTextSize(bigDiv * 0.4f);
-                } else {
-                    paint.setColor(mainFontColor);
-                    paint.setTextSize(bigDiv);
-                }
-
-                float sw = paint.measureText(desc);
-                float offs = (oneThirdWidth / 2.0f) - (sw / 2.0f);
-                canvas.drawText(desc, x * oneThirdWidth + offs + left, (bigDiv * 0.9f) + (y * oneThirdHeight) + top, paint);
+                // and draw them bold
+                paint.setFakeBoldText(CharacterPredictor.isLikely(x, y));
+                drawCellText(canvas, desc, x * oneThirdWidth + left, y * oneThirdHeight + top, oneThirdWidth, bigDiv, mainFontColor, modeFontColor, paint);
             }
         }
+        paint.setFakeBoldText(false);
     }
 
     private void DrawZoomedOutView(Canvas canvas, int height, int width, float fontDiv, int left, int top, int ninthWidth, int ninthHeight, Paint paint, String[][] layout) {
@@ -253,26 +261,43 @@ public class KeyboardView extends View {
             canvas.drawLine(left + ninthWidth * i, top, left + ninthWidth * i, height, paint);
         }
 
+        // Emoji pages are copied out of an atlas once it is built, colour glyphs are slow to draw
+        boolean useAtlas = KeyboardLayout.IsEmojiPage()
+                && EmojiAtlas.getInstance().prepare(this, layout, ninthWidth, ninthHeight, fontDiv,
+                        metrics.densityDpi, mainFontColor, modeFontColor);
+
         // key positions
         paint.setTextSize(fontDiv);
         for (int y = 0; y < 9; y++) {
             for (int x = 0; x < 9; x++) {
-                String desc = KeyboardLayout.Visualise(layout[y][x]);
-                if (desc.length() > 1) {
-                    paint.setColor(modeFontColor);
-                    paint.setTextSize(fontDiv * 0.4f);
-                } else {
-                    paint.setColor(mainFontColor);
-                    paint.setTextSize(fontDiv);
+                if (useAtlas) {
+                    EmojiAtlas.getInstance().draw(canvas, x, y, x * ninthWidth + left, y * ninthHeight + top);
+                    continue;
                 }
-
-                float sw = paint.measureText(desc);
-                float offs = (ninthWidth / 2.0f) - (sw / 2.0f);
-                canvas.drawText(desc, x * ninthWidth + offs + left, (fontDiv * 0.9f) + (y * ninthHeight) + top, paint);
+                String desc = KeyboardLayout.Visualise(layout[y][x]);
+                drawCellText(canvas, desc, x * ninthWidth + left, y * ninthHeight + top, ninthWidth, fontDiv, mainFontColor, modeFontColor, paint);
             }
         }
     }
 
+    /**
+     * Draw a cell's text centred in the cell. Longer text, like mode names, is drawn smaller.
+     * Also used off the UI thread by {@link EmojiAtlas}, so only touches its arguments.
+     */
+    static void drawCellText(Canvas canvas, String desc, float cellLeft, float cellTop, int cellWidth, float fontDiv, int mainFontColor, int modeFontColor, Paint paint) {
+        if (desc.length() > 1) {
+            paint.setColor(modeFontColor);
+            paint.setTextSize(fontDiv * 0.4f);
+        } else {
+            paint.setColor(mainFontColor);
+            paint.setTextSize(fontDiv);
+        }
+
+        float sw = paint.measureText(desc);
+        float offs = (cellWidth / 2.0f) - (sw / 2.0f);
+        canvas.drawText(desc, cellLeft + offs, (fontDiv * 0.9f) + cellTop, paint);
+    }
+
     /**
      * Requests a redraw of the entire keyboard. Calling {@link #invalidate} is not sufficient
      * because the keyboard renders the keys to an off-screen buffer and an invalidate() only
@@ -287,7 +312,13 @@ public class KeyboardView extends View {
         super.onDetachedFromWindow();
     }
 
+    /**
+     * Drop what the view keeps between frames. Caches that outlive the view register with
+     * {@link rkr.simplekeyboard.inputmethod.latin.utils.MemoryTrimmer} instead.
+     */
     public void deallocateMemory() {
+        // Re-read lazily, the display may have changed by the time we are shown again.
+        metrics = null;
     }
 
     public void SetNightMode() {
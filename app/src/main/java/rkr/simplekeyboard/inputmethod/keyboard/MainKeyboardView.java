@@ -28,6 +28,7 @@ import android.view.ViewGroup;
 
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.DrawingProxy;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.FrameInvalidationScheduler;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.KeyboardParams;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.NonDistinctMultitouchHelper;
 
@@ -38,6 +39,10 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
     private static final String TAG = MainKeyboardView.class.getSimpleName();
 
     private final NonDistinctMultitouchHelper mNonDistinctMultitouchHelper;
+    private final FrameInvalidationScheduler mInvalidationScheduler;
+    // The quadrant zoomed in on when the view was last redrawn for a press.
+    private int mPressedQuadrantX;
+    private int mPressedQuadrantY;
 
     public MainKeyboardView(final Context context, final AttributeSet attrs) {
         this(context, attrs, R.attr.mainKeyboardViewStyle);
@@ -55,6 +60,7 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
                 .hasSystemFeature(PackageManager.FEATURE_TOUCHSCREEN_MULTITOUCH_DISTINCT);
         mNonDistinctMultitouchHelper = hasDistinctMultitouch ? null
                 : new NonDistinctMultitouchHelper();
+        mInvalidationScheduler = new FrameInvalidationScheduler(this);
 
         mainKeyboardViewAttr.recycle();
     }
@@ -96,20 +102,46 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
 
     @Override
     public void invalidateAll() {
-        invalidate();
+        mInvalidationScheduler.invalidate();
     }
 
-    // Implements {@link DrawingProxy#onKeyPressed(Key,boolean)}.
+    // Implements {@link DrawingProxy#onKeyPressed()}.
     @Override
     public void onKeyPressed() {
+        // Another finger going down can zoom in on another quadrant.
+        if (sIsBeingPressed && mPressedQuadrantX == KeyboardLayout.sQuadrantX
+                && mPressedQuadrantY == KeyboardLayout.sQuadrantY) {
+            return;
+        }
         sIsBeingPressed = true;
-        invalidate();
+        mPressedQuadrantX = KeyboardLayout.sQuadrantX;
+        mPressedQuadrantY = KeyboardLayout.sQuadrantY;
+        mInvalidationScheduler.invalidate();
     }
-    // Implements {@link DrawingProxy#onKeyReleased(Key,boolean)}.
+    // Implements {@link DrawingProxy#onKeyReleased()}.
     @Override
     public void onKeyReleased() {
+        if (!sIsBeingPressed) {
+            return;
+        }
         sIsBeingPressed = false;
-        invalidate();
+        mInvalidationScheduler.invalidate();
+    }
+
+    // Implements {@link DrawingProxy#invalidateCells(int[])}.
+    @Override
+    public void invalidateCells(final int[] cells) {
+        final int qx = KeyboardLayout.sQuadrantX;
+        final int qy = KeyboardLayout.sQuadrantY;
+        for (final int cell : cells) {
+            final int x = cell % 9;
+            final int y = cell / 9;
+            // Only the touched quadrant is on screen while pressed.
+            if (!sIsBeingPressed || (x >= qx && x < qx + 3 && y >= qy && y < qy + 3)) {
+                mInvalidationScheduler.invalidate();
+                return;
+            }
+        }
     }
 
     @Override
@@ -121,6 +153,7 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
     @Override
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
+        mInvalidationScheduler.cancel();
     }
 
     @SuppressLint("ClickableViewAccessibility")
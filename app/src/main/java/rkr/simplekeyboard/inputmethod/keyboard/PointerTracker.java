@@ -26,8 +26,12 @@ import java.util.ArrayList;
 import java.util.Objects;
 
 import rkr.simplekeyboard.inputmethod.R;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.CharacterPredictor;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.CompletionLookup;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.DrawingProxy;
 import rkr.simplekeyboard.inputmethod.keyboard.internal.PointerTrackerQueue;
+import rkr.simplekeyboard.inputmethod.latin.AudioAndHapticFeedbackManager;
+import rkr.simplekeyboard.inputmethod.latin.common.Constants;
 import rkr.simplekeyboard.inputmethod.latin.common.CoordinateUtils;
 import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
 
@@ -38,6 +42,8 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
     private static final boolean DEBUG_MODE = DebugFlags.DEBUG_ENABLED || DEBUG_EVENT;
 
     public static int lastDrawTop, lastDrawLeft, lastDrawWidth, lastDrawHeight;
+    // How far past its edge, as a fraction of a zoomed cell, a likely next character is still hit.
+    private static final float LIKELY_CELL_SLOP = 0.15f;
 
     static final class PointerTrackerParams {
         public final boolean mKeySelectionByDraggingFinger;
@@ -73,15 +79,24 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
 
     private static DrawingProxy sDrawingProxy;
     private static KeyboardActionListener sListener = KeyboardActionListener.EMPTY_LISTENER;
-
     // Last pointer position.
     private int mLastX;
     private int mLastY;
+    // The zoomed in cell under the pointer, from updateZoomedCell.
+    private int mCellX;
+    private int mCellY;
     private boolean mCursorMoved = false;
 
     // true if this pointer is no longer triggering any action because it has been canceled.
     private boolean mIsTrackingForActionDisabled;
 
+    // The time of the last up event on this pointer, used by the touch noise filter.
+    private long mUpTime;
+    // true if the current down event was dropped as touch noise, so the matching up is ignored.
+    private boolean mIsDetectingTouchNoise;
+    // Number of down events dropped as touch noise since the keyboard was created.
+    private static int sTouchNoiseCount;
+
     // true if this pointer is in the dragging finger mode.
     boolean mIsInDraggingFinger;
     // true if this pointer is sliding from a modifier key and in the sliding key input mode,
@@ -107,6 +122,10 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
         return trackers.get(id);
     }
 
+    public static int getTouchNoiseCount() {
+        return sTouchNoiseCount;
+    }
+
     public static void cancelAllPointerTrackers() {
         sPointerTrackerQueue.cancelAllPointerTrackers();
     }
@@ -157,9 +176,32 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
             printTouchEvent("onDownEvent:", x, y, eventTime);
         }
 
+        // Naive up-to-down noise filter: a down that lands very soon after, and very close to,
+        // the previous up is a digitiser bounce rather than a new tap.
+        final long deltaT = eventTime - mUpTime;
+        if (deltaT < sParams.mTouchNoiseThresholdTime) {
+            final int dx = x - mLastX;
+            final int dy = y - mLastY;
+            final int threshold = sParams.mTouchNoiseThresholdDistance;
+            if (dx * dx + dy * dy < threshold * threshold) {
+                if (DEBUG_MODE) {
+                    Log.w(TAG, String.format("[%d] onDownEvent: ignore potential noise: time=%d",
+                            mPointerId, deltaT));
+                }
+                mIsDetectingTouchNoise = true;
+                sTouchNoiseCount++;
+                return;
+            }
+        }
+        mIsDetectingTouchNoise = false;
+
         sPointerTrackerQueue.add(this);
         KeyboardLayout.TouchDown(getXIndex(x),getYIndex(y));
         sDrawingProxy.onKeyPressed();
+        // After the redraw has been scheduled, so the feedback never delays it.
+        if (AudioAndHapticFeedbackManager.isFeedbackEnabled()) {
+            sListener.onPressKey();
+        }
     }
 
     private  int getXIndex(int x){
@@ -175,6 +217,29 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
         return yi;
     }
 
+    /**
+     * Find the zoomed in cell under a point, widening the cells likely to be typed next: a point
+     * just outside one, in an unlikely cell, counts as in it.
+     */
+    private void updateZoomedCell(final int x, final int y) {
+        int xi = getXIndex(x);
+        int yi = getYIndex(y);
+        if (!CharacterPredictor.isLikely(xi, yi)) {
+            // Where in the cell the point is, 0..1 across it
+            final float fx = ((x - lastDrawLeft) * 3.0f) / lastDrawWidth - xi;
+            final float fy = ((y - lastDrawTop) * 3.0f) / lastDrawHeight - yi;
+            final int nx = fx < LIKELY_CELL_SLOP ? xi - 1 : fx > 1 - LIKELY_CELL_SLOP ? xi + 1 : xi;
+            final int ny = fy < LIKELY_CELL_SLOP ? yi - 1 : fy > 1 - LIKELY_CELL_SLOP ? yi + 1 : yi;
+            if (nx != xi && CharacterPredictor.isLikely(nx, yi)) {
+                xi = nx;
+            } else if (ny != yi && CharacterPredictor.isLikely(xi, ny)) {
+                yi = ny;
+            }
+        }
+        mCellX = xi;
+        mCellY = yi;
+    }
+
     private void resetKeySelectionByDraggingFinger() {
         mIsInDraggingFinger = false;
         mIsInSlidingKeyInput = false;
@@ -186,7 +251,7 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
         }
         mLastX = x;
         mLastY = y;
-        sDrawingProxy.invalidateAll();
+        // The zoomed in view doesn't follow the finger, so a move needs no redraw.
     }
 
     private void onUpEvent(final int x, final int y, final long eventTime) {
@@ -194,6 +259,13 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
             printTouchEvent("onUpEvent  :", x, y, eventTime);
         }
 
+        mUpTime = eventTime;
+        if (mIsDetectingTouchNoise) {
+            // The matching down was dropped as noise, so there is nothing to release or send.
+            mIsDetectingTouchNoise = false;
+            return;
+        }
+
         mLastX = x;
         mLastY = y;
         sDrawingProxy.onKeyReleased();
@@ -201,7 +273,9 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
         sPointerTrackerQueue.releaseAllPointersOlderThan(this, eventTime);
 
         // get the key and send it
-        String result = KeyboardLayout.TouchUp(getXIndex(x),getYIndex(y));
+        updateZoomedCell(x, y);
+        String result = KeyboardLayout.TouchUp(mCellX, mCellY);
+        String completion = KeyboardLayout.GetCompletion(result);
         if (Objects.equals(result, KeyboardLayout.nul)) {
             // nothing- most likely out-of-bounds, or an empty slot
             if (DEBUG_EVENT) {
@@ -209,7 +283,11 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
             }
         } else if (KeyboardLayout.IsInternal(result)) {
             KeyboardLayout.SwitchMode(result);
+            sDrawingProxy.invalidateAll();
+        } else if (completion != null) {
+            sListener.onCompletionInput(completion);
         } else if (KeyboardLayout.IsSimple(result)) {
+            CharacterPredictor.learn(result);
             sListener.onTextInput(result);
         } else {
             int[] codeAndMeta = KeyboardLayout.GetSpecialKey(result);
@@ -221,6 +299,21 @@ public final class PointerTracker implements PointerTrackerQueue.Element {
             }
         }
 
+        // The sound goes with the key sent, which isn't known until now.
+        if (!Objects.equals(result, KeyboardLayout.nul) && !KeyboardLayout.IsInternal(result)
+                && AudioAndHapticFeedbackManager.isFeedbackEnabled()) {
+            sListener.onReleaseKey(completion != null ? Constants.NOT_A_CODE
+                    : KeyboardLayout.GetFeedbackCode(result));
+        }
+
+        // Text or the cursor may have changed, so the word being typed may have too
+        if (!Objects.equals(result, KeyboardLayout.nul) && !KeyboardLayout.IsInternal(result)) {
+            CompletionLookup.update(sListener, sDrawingProxy);
+            if (!KeyboardLayout.IsSimple(result)) {
+                CharacterPredictor.setContext(sListener.getTextBeforeCursor(2));
+            }
+        }
+
         // clean up
         sPointerTrackerQueue.remove(this);
     }
@@ -0,0 +1,336 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import rkr.simplekeyboard.inputmethod.latin.utils.ExecutorUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.MemoryTrimmer;
+
+/**
+ * Guesses which cells of a pressed quadrant are likely to be typed next, from the two characters
+ * before the cursor, so the zoomed in view can mark them and give them a little more room.
+ *
+ * A character model of order one and two, learnt as text is typed. The counts are hashed into
+ * fixed {@code short} tables, with a total per context, and all of an order's counts are halved
+ * when one of them would overflow, so old habits fade. The guess is made once per press, when
+ * the quadrant is known, into a fixed array the drawing and the hit test only read: nothing is
+ * allocated and nothing is looked up while drawing. The tables are saved to the files directory
+ * as their non-zero entries, in the background. When memory runs low they are saved and dropped,
+ * and read again the next time they are wanted.
+ *
+ * Only used on the UI thread, apart from the file work.
+ */
+public final class CharacterPredictor {
+    private static final String TAG = CharacterPredictor.class.getSimpleName();
+    private static final String FILE_NAME = "next-characters.bin";
+    private static final int MAGIC = 0x4B394E43; // "K9NC"
+    private static final int VERSION = 1;
+    // Table sizes, powers of two. Indexes must fit in a short for the file.
+    private static final int COUNTS_1_SIZE = 1 << 13;
+    private static final int TOTALS_1_SIZE = 1 << 9;
+    private static final int COUNTS_2_SIZE = 1 << 15;
+    private static final int TOTALS_2_SIZE = 1 << 12;
+    // How much an order-two context is trusted over the order-one guess, in characters seen.
+    private static final int BACK_OFF_WEIGHT = 2;
+    // Characters seen after the context before any guess is made.
+    private static final int MIN_SEEN = 8;
+    /** A cell is likely if its character comes next at least this often. */
+    private static final float LIKELY_PROBABILITY = 0.3f;
+    // Save after this many characters learnt, as well as when input finishes.
+    private static final int SAVE_AFTER = 1024;
+    // The context before the first character of a field.
+    private static final char NONE = 0;
+
+    /** Counts and per-context totals, hashed. */
+    private static final class Tables {
+        final short[] mCounts1 = new short[COUNTS_1_SIZE];
+        final short[] mTotals1 = new short[TOTALS_1_SIZE];
+        final short[] mCounts2 = new short[COUNTS_2_SIZE];
+        final short[] mTotals2 = new short[TOTALS_2_SIZE];
+
+        short[][] all() {
+            return new short[][] {mCounts1, mTotals1, mCounts2, mTotals2};
+        }
+    }
+
+    private static final Handler sUiHandler = new Handler(Looper.getMainLooper());
+    private static File sFile;
+    // Null until the file has been read, and after the tables have been trimmed.
+    private static Tables sTables;
+    private static boolean sIsLoading;
+    private static int sUnsaved;
+    // Not learnt from, as in password fields.
+    private static boolean sIsLearning;
+    // The two characters before the cursor, lower case, last first.
+    private static char sLast = NONE;
+    private static char sBeforeLast = NONE;
+    // Which cells of the pressed quadrant are likely, as y * 3 + x.
+    private static final boolean[] sLikely = new boolean[9];
+
+    private static final MemoryTrimmer.Trimmable sTrimmable = new MemoryTrimmer.Trimmable() {
+        @Override
+        public void releaseMemory() {
+            // Anything not saved yet is written from a copy first.
+            save();
+            sTables = null;
+        }
+
+        @Override
+        public void rebuild() {
+            load();
+        }
+
+        @Override
+        public long getRetainedBytes() {
+            return sTables == null ? 0
+                    : 2L * (COUNTS_1_SIZE + TOTALS_1_SIZE + COUNTS_2_SIZE + TOTALS_2_SIZE);
+        }
+    };
+
+    private CharacterPredictor() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Start reading the saved tables in the background. Only the first call does anything.
+     */
+    public static void init(final Context context) {
+        if (sFile != null) {
+            return;
+        }
+        sFile = new File(context.getFilesDir(), FILE_NAME);
+        MemoryTrimmer.register(sTrimmable, MemoryTrimmer.TIER_CACHES);
+        load();
+    }
+
+    // Read the tables in the background, unless they are there or on their way.
+    private static void load() {
+        if (sFile == null || sTables != null || sIsLoading) {
+            return;
+        }
+        sIsLoading = true;
+        final File file = sFile;
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Tables tables = read(file);
+                sUiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        sTables = tables;
+                        sIsLoading = false;
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Start on a new field, or after the cursor has moved.
+     * @param before the text before the cursor, or null if it isn't known
+     * @param isLearning false to not learn from what is typed, as in password fields
+     */
+    public static void startInput(final CharSequence before, final boolean isLearning) {
+        sIsLearning = isLearning;
+        setContext(before);
+    }
+
+    /**
+     * Take the context from the text before the cursor, after anything but plain text input.
+     * @param before the text before the cursor, or null if it isn't known
+     */
+    public static void setContext(final CharSequence before) {
+        final int length = before == null ? 0 : before.length();
+        sLast = length > 0 ? Character.toLowerCase(before.charAt(length - 1)) : NONE;
+        sBeforeLast = length > 1 ? Character.toLowerCase(before.charAt(length - 2)) : NONE;
+    }
+
+    /** Learn from text as it is typed, and move the context on past it. */
+    public static void learn(final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = Character.toLowerCase(text.charAt(i));
+            if (sTables != null && sIsLearning) {
+                count(sTables, sBeforeLast, sLast, c);
+                sUnsaved++;
+            }
+            sBeforeLast = sLast;
+            sLast = c;
+        }
+        if (sUnsaved >= SAVE_AFTER) {
+            save();
+        }
+    }
+
+    private static void count(final Tables tables, final char beforeLast, final char last,
+            final char c) {
+        count(tables.mCounts1, index(NONE, last, c, COUNTS_1_SIZE),
+                tables.mTotals1, index(NONE, last, NONE, TOTALS_1_SIZE));
+        count(tables.mCounts2, index(beforeLast, last, c, COUNTS_2_SIZE),
+                tables.mTotals2, index(beforeLast, last, NONE, TOTALS_2_SIZE));
+    }
+
+    // Count once in an order's tables. A count bucket can be shared by several hashed contexts,
+    // so it can fill before its total does; the order is halved when either would overflow.
+    private static void count(final short[] counts, final int count, final short[] totals,
+            final int total) {
+        if (counts[count] == Short.MAX_VALUE || totals[total] == Short.MAX_VALUE) {
+            halve(counts);
+            halve(totals);
+        }
+        counts[count]++;
+        totals[total]++;
+    }
+
+    private static void halve(final short[] table) {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>= 1;
+        }
+    }
+
+    private static int index(final char beforeLast, final char last, final char c,
+            final int size) {
+        int h = (beforeLast * 31 + last) * 0x9E3779B1 + c * 0x85EBCA6B;
+        h ^= h >>> 15;
+        return h & (size - 1);
+    }
+
+    /**
+     * Guess the likely cells of a quadrant that has just been pressed.
+     * @param layout the current layout
+     * @param qx the quadrant's first column
+     * @param qy the quadrant's first row
+     */
+    public static void predict(final String[][] layout, final int qx, final int qy) {
+        // After a trim, the tables come back for the presses that follow this one.
+        load();
+        final Tables tables = sTables;
+        final int seen1 = tables == null ? 0 : tables.mTotals1[index(NONE, sLast, NONE,
+                TOTALS_1_SIZE)];
+        for (int y = 0; y < 3; y++) {
+            for (int x = 0; x < 3; x++) {
+                final int row = qy + y;
+                final int column = qx + x;
+                sLikely[y * 3 + x] = seen1 >= MIN_SEEN && row < layout.length
+                        && column < layout[row].length
+                        && isCharacter(layout[row][column])
+                        && getProbability(tables, seen1, layout[row][column].charAt(0))
+                                >= LIKELY_PROBABILITY;
+            }
+        }
+    }
+
+    // A single typed character, not a mode switch or other special key.
+    private static boolean isCharacter(final String cell) {
+        if (cell.length() != 1) return false;
+        final char c = cell.charAt(0);
+        return c >= ' ' && (c < 0xE000 || c >= 0xF900);
+    }
+
+    // The order-two estimate, backing off to order one for contexts seen only a few times.
+    private static float getProbability(final Tables tables, final int seen1, final char cell) {
+        final char c = Character.toLowerCase(cell);
+        final float p1 = (float) tables.mCounts1[index(NONE, sLast, c, COUNTS_1_SIZE)] / seen1;
+        final int seen2 = tables.mTotals2[index(sBeforeLast, sLast, NONE, TOTALS_2_SIZE)];
+        final int count2 = tables.mCounts2[index(sBeforeLast, sLast, c, COUNTS_2_SIZE)];
+        return (count2 + BACK_OFF_WEIGHT * p1) / (seen2 + BACK_OFF_WEIGHT);
+    }
+
+    /**
+     * Whether a cell of the pressed quadrant is likely to be typed next.
+     * @param xi x index 0..2
+     * @param yi y index 0..2
+     */
+    public static boolean isLikely(final int xi, final int yi) {
+        return xi >= 0 && xi < 3 && yi >= 0 && yi < 3 && sLikely[yi * 3 + xi];
+    }
+
+    /** Save what has been learnt since the last save, in the background. */
+    public static void save() {
+        if (sTables == null || sUnsaved == 0) {
+            return;
+        }
+        sUnsaved = 0;
+        final short[][] snapshot = sTables.all();
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = snapshot[i].clone();
+        }
+        final File file = sFile;
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                write(file, snapshot);
+            }
+        });
+    }
+
+    // File work, on the background executor only.
+
+    private static Tables read(final File file) {
+        final Tables tables = new Tables();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(TAG, "Unknown next characters format, starting again");
+                return tables;
+            }
+            for (final short[] table : tables.all()) {
+                if (in.readInt() != table.length) {
+                    throw new IOException("Table size has changed");
+                }
+                final int entries = in.readInt();
+                for (int i = 0; i < entries; i++) {
+                    table[in.readUnsignedShort()] = in.readShort();
+                }
+            }
+        } catch (final FileNotFoundException e) {
+            // Nothing learnt yet.
+        } catch (final IOException | ArrayIndexOutOfBoundsException e) {
+            Log.w(TAG, "Can't read the next characters, starting again", e);
+            return new Tables();
+        }
+        return tables;
+    }
+
+    private static void write(final File file, final short[][] tables) {
+        final File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            // Most entries are zero, so only the others are written, with their index.
+            for (final short[] table : tables) {
+                int entries = 0;
+                for (final short count : table) {
+                    if (count != 0) entries++;
+                }
+                out.writeInt(table.length);
+                out.writeInt(entries);
+                for (int i = 0; i < table.length; i++) {
+                    if (table[i] == 0) continue;
+                    out.writeShort(i);
+                    out.writeShort(table[i]);
+                }
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, "Can't save the next characters", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Can't replace the next characters file");
+            temp.delete();
+        }
+    }
+}
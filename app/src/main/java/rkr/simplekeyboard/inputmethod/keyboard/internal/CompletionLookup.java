@@ -0,0 +1,71 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import rkr.simplekeyboard.inputmethod.keyboard.KeyboardActionListener;
+import rkr.simplekeyboard.inputmethod.keyboard.KeyboardLayout;
+import rkr.simplekeyboard.inputmethod.latin.utils.ExecutorUtils;
+
+/**
+ * Keeps the completions in the letter layouts up to date with the word being typed.
+ *
+ * The word is read on the UI thread, where the input connection's cache lives, and completed on
+ * the background executor. The result is posted back, and the keyboard is redrawn on the next
+ * frame only if a cell on screen has changed. Each lookup is numbered, and a result is dropped
+ * if another lookup was asked for after it: the word has changed since, so it would show
+ * completions of text that is gone.
+ *
+ * Only used on the UI thread.
+ */
+public final class CompletionLookup {
+    private static final Handler sUiHandler = new Handler(Looper.getMainLooper());
+    private static final String[] EMPTY = new String[0];
+    private static int sGeneration;
+
+    private CompletionLookup() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Look up completions of the word now before the cursor, in the background.
+     */
+    public static void update(final KeyboardActionListener listener, final DrawingProxy proxy) {
+        final int generation = ++sGeneration;
+        final String prefix = listener.getCompletionPrefix();
+        if (prefix.isEmpty()) {
+            show(proxy, EMPTY);
+            return;
+        }
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final String[] completions =
+                        listener.getCompletions(prefix, KeyboardLayout.MAX_COMPLETIONS);
+                sUiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == sGeneration) {
+                            show(proxy, completions);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Remove the completions, and drop any lookup still running. The caller redraws.
+     */
+    public static void clear() {
+        sGeneration++;
+        KeyboardLayout.SetCompletions(EMPTY);
+    }
+
+    private static void show(final DrawingProxy proxy, final String[] completions) {
+        final int[] cells = KeyboardLayout.SetCompletions(completions);
+        if (cells.length > 0) {
+            proxy.invalidateCells(cells);
+        }
+    }
+}
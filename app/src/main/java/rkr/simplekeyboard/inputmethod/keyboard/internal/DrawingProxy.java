@@ -31,4 +31,10 @@ public interface DrawingProxy {
      * Called when a key is being released.
      */
     void onKeyReleased();
+
+    /**
+     * Called when the text of some cells of the current layout has changed.
+     * @param cells the cells, as y * 9 + x
+     */
+    void invalidateCells(int[] cells);
 }
@@ -0,0 +1,245 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import rkr.simplekeyboard.inputmethod.latin.utils.MemoryTrimmer;
+
+/**
+ * The emoji catalogue, compiled from app/src/main/emoji by the layouttools EmojiCompiler.
+ *
+ * Nothing is read until the emoji pages are first shown. Then the asset is read in one go, but
+ * only its group and page tables are parsed: a page's emoji are decoded from the UTF-8 when it
+ * is first asked for, and the last few decoded pages are kept. The country flags of a regional
+ * group aren't in the asset at all, and are made from the device's country codes. When memory
+ * runs low all of it is dropped, and the asset is read again when the pages are next shown.
+ *
+ * Only used on the UI thread.
+ */
+public final class EmojiCatalogue {
+    private static final String TAG = EmojiCatalogue.class.getSimpleName();
+    private static final String ASSET = "emoji.bin";
+    private static final int MAGIC = 0x4B39454D; // "K9EM"
+    private static final int VERSION = 1;
+    /** Emoji per page, as in EmojiCompiler. */
+    public static final int PAGE_SIZE = 72;
+    private static final int FLAG_REGIONAL = 1;
+    private static final int MAX_CACHED_PAGES = 8;
+    private static final int REGIONAL_INDICATOR_A = 0x1F1E6;
+    // Rough size of a decoded emoji, a String and its characters.
+    private static final int EMOJI_BYTES = 48;
+
+    private static Context sContext;
+    private static boolean sIsLoaded;
+
+    private static byte[] sData = new byte[0];
+    private static int sDataStart;
+    private static String[] sGroupLabels = new String[0];
+    private static int[] sGroupFlags = new int[0];
+    private static int[] sGroupFirstPages = new int[0];
+    private static int[] sGroupPageCounts = new int[0];
+    private static int[] sPageOffsets = new int[0];
+    private static int[] sPageLengths = new int[0];
+    private static String[] sCountries;
+
+    // Keyed by group in the high bits and page in the low bits.
+    private static final LinkedHashMap<Integer, String[]> sPages =
+            new LinkedHashMap<Integer, String[]>(MAX_CACHED_PAGES, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Integer, String[]> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+
+    private static final MemoryTrimmer.Trimmable sTrimmable = new MemoryTrimmer.Trimmable() {
+        @Override
+        public void releaseMemory() {
+            sIsLoaded = false;
+            sData = new byte[0];
+            sGroupLabels = new String[0];
+            sGroupFlags = new int[0];
+            sGroupFirstPages = new int[0];
+            sGroupPageCounts = new int[0];
+            sPageOffsets = new int[0];
+            sPageLengths = new int[0];
+            sCountries = null;
+            sPages.clear();
+        }
+
+        @Override
+        public void rebuild() {
+            // Read again when the pages are next shown, which may not be soon.
+        }
+
+        @Override
+        public long getRetainedBytes() {
+            return sData.length + 8L * sPageOffsets.length
+                    + (long) sPages.size() * PAGE_SIZE * EMOJI_BYTES;
+        }
+    };
+
+    private EmojiCatalogue() {
+        // This utility class is not publicly instantiable.
+    }
+
+    public static void init(final Context context) {
+        if (sContext == null) {
+            MemoryTrimmer.register(sTrimmable, MemoryTrimmer.TIER_CACHES);
+        }
+        sContext = context.getApplicationContext();
+    }
+
+    private static void load() {
+        if (sIsLoaded || sContext == null) {
+            return;
+        }
+        sIsLoaded = true;
+        try (InputStream in = sContext.getAssets().open(ASSET)) {
+            final ByteArrayOutputStream out =
+                    new ByteArrayOutputStream(Math.max(in.available(), 4096));
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                out.write(buffer, 0, read);
+            }
+            parse(out.toByteArray());
+        } catch (final IOException | RuntimeException e) {
+            Log.e(TAG, "Can't load the emoji catalogue", e);
+        }
+    }
+
+    private static void parse(final byte[] data) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Unknown emoji catalogue format");
+        }
+        final int groupCount = buffer.getInt();
+        final String[] labels = new String[groupCount];
+        final int[] flags = new int[groupCount];
+        final int[] firstPages = new int[groupCount];
+        final int[] pageCounts = new int[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+            final int length = buffer.getInt();
+            labels[g] = new String(data, buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+            flags[g] = buffer.getInt();
+            firstPages[g] = buffer.getInt();
+            pageCounts[g] = buffer.getInt();
+        }
+        final int pageCount = buffer.getInt();
+        final int[] offsets = new int[pageCount];
+        final int[] lengths = new int[pageCount];
+        for (int p = 0; p < pageCount; p++) {
+            offsets[p] = buffer.getInt();
+            lengths[p] = buffer.getInt();
+        }
+
+        sData = data;
+        sDataStart = buffer.position();
+        sGroupLabels = labels;
+        sGroupFlags = flags;
+        sGroupFirstPages = firstPages;
+        sGroupPageCounts = pageCounts;
+        sPageOffsets = offsets;
+        sPageLengths = lengths;
+    }
+
+    public static int getGroupCount() {
+        load();
+        return sGroupLabels.length;
+    }
+
+    /** The emoji the key that moves to the group shows. */
+    public static String getGroupLabel(final int group) {
+        load();
+        return sGroupLabels[group];
+    }
+
+    /** Whether the group is followed by the country flags. */
+    public static boolean isRegional(final int group) {
+        load();
+        return (sGroupFlags[group] & FLAG_REGIONAL) != 0;
+    }
+
+    public static int getPageCount(final int group) {
+        load();
+        int count = sGroupPageCounts[group];
+        if (isRegional(group)) {
+            count += (getCountries().length + PAGE_SIZE - 1) / PAGE_SIZE;
+        }
+        return count;
+    }
+
+    /**
+     * The emoji of a page, {@link #PAGE_SIZE} long with nulls after the last one.
+     */
+    public static String[] getPage(final int group, final int page) {
+        load();
+        final Integer key = (group << 16) | page;
+        String[] emoji = sPages.get(key);
+        if (emoji != null) {
+            return emoji;
+        }
+        emoji = new String[PAGE_SIZE];
+        if (page < sGroupPageCounts[group]) {
+            final int p = sGroupFirstPages[group] + page;
+            final String text = new String(sData, sDataStart + sPageOffsets[p], sPageLengths[p],
+                    StandardCharsets.UTF_8);
+            final String[] split = text.split(" ");
+            System.arraycopy(split, 0, emoji, 0, Math.min(split.length, PAGE_SIZE));
+        } else {
+            final String[] countries = getCountries();
+            final int start = (page - sGroupPageCounts[group]) * PAGE_SIZE;
+            for (int i = 0; i < PAGE_SIZE && start + i < countries.length; i++) {
+                emoji[i] = toFlag(countries[start + i]);
+            }
+        }
+        sPages.put(key, emoji);
+        return emoji;
+    }
+
+    /**
+     * An emoji by its page in the asset and its place on the page, which is how the search index
+     * refers to them.
+     */
+    static String getEmoji(final int reference) {
+        load();
+        final int p = reference >>> 8;
+        for (int g = 0; g < sGroupFirstPages.length; g++) {
+            if (p >= sGroupFirstPages[g] && p < sGroupFirstPages[g] + sGroupPageCounts[g]) {
+                return getPage(g, p - sGroupFirstPages[g])[reference & 0xFF];
+            }
+        }
+        return null;
+    }
+
+    /** The country codes there are flags for, sorted. */
+    static String[] getCountries() {
+        if (sCountries == null) {
+            final String[] countries = Locale.getISOCountries();
+            Arrays.sort(countries);
+            sCountries = countries;
+        }
+        return sCountries;
+    }
+
+    /** A flag is the country code written in regional indicator letters. */
+    static String toFlag(final String country) {
+        final StringBuilder sb = new StringBuilder(4);
+        for (int i = 0; i < country.length(); i++) {
+            sb.appendCodePoint(REGIONAL_INDICATOR_A
+                    + Character.toUpperCase(country.charAt(i)) - 'A');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,194 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * The search of the emoji name index compiled by the layouttools EmojiSearchIndex: the words
+ * sorted, each with the emoji it names, so the emoji for a typed prefix are a binary search away.
+ * Also finds countries by their names, for the flags, which aren't in the index.
+ *
+ * Only uses the JDK, so the layouttools EmojiSearchBenchmark times this same code. The buffer is
+ * only read, so an index can be searched from any thread.
+ */
+public final class EmojiNameIndex {
+    public static final int MAGIC = 0x4B39454E; // "K9EN"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+
+    private final ByteBuffer mIndex;
+    private final int mWordCount;
+    private final int mOffsetsAt;
+    private final int mStartsAt;
+    private final int mReferencesAt;
+    private final int mWordsAt;
+
+    /**
+     * @param index the compiled index, header included
+     * @throws IOException if it isn't an index this version can read
+     */
+    public EmojiNameIndex(final ByteBuffer index) throws IOException {
+        if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION) {
+            throw new IOException("Unknown emoji index format");
+        }
+        mIndex = index;
+        mWordCount = index.getInt(8);
+        mOffsetsAt = HEADER_SIZE;
+        mStartsAt = mOffsetsAt + (mWordCount + 1) * 4;
+        mReferencesAt = mStartsAt + (mWordCount + 1) * 4;
+        mWordsAt = mReferencesAt + index.getInt(12) * 4;
+    }
+
+    /** The words of a query, lower case, or none if it is blank. */
+    public static String[] getTerms(final String query) {
+        final String terms = query.trim().toLowerCase(Locale.ROOT);
+        return terms.isEmpty() ? new String[0] : terms.split(" +");
+    }
+
+    /**
+     * The references of the emoji with a word starting with each of the terms, in index order.
+     * A reference is the emoji's page in the catalogue asset &lt;&lt; 8 | its place on the page.
+     */
+    public int[] query(final String[] terms) {
+        int[] results = null;
+        int count = 0;
+        for (final String term : terms) {
+            final int[] matches = match(term);
+            if (results == null) {
+                results = matches;
+                count = matches.length;
+                continue;
+            }
+            // Keep the results that also match this term.
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (contains(matches, results[i])) {
+                    results[kept++] = results[i];
+                }
+            }
+            count = kept;
+        }
+        return results == null ? new int[0] : Arrays.copyOf(results, count);
+    }
+
+    private static boolean contains(final int[] values, final int value) {
+        for (final int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** The distinct references for one prefix. */
+    private int[] match(final String prefix) {
+        // Lower bound: the first word not less than the prefix.
+        int lo = 0;
+        int hi = mWordCount;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (compare(mid, prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        int[] results = new int[16];
+        int count = 0;
+        for (int w = lo; w < mWordCount && startsWith(w, prefix); w++) {
+            final int end = mIndex.getInt(mStartsAt + (w + 1) * 4);
+            for (int r = mIndex.getInt(mStartsAt + w * 4); r < end; r++) {
+                final int reference = mIndex.getInt(mReferencesAt + r * 4);
+                boolean seen = false;
+                for (int i = 0; i < count && !seen; i++) {
+                    seen = results[i] == reference;
+                }
+                if (seen) {
+                    continue;
+                }
+                if (count == results.length) {
+                    results = Arrays.copyOf(results, count * 2);
+                }
+                results[count++] = reference;
+            }
+        }
+        return Arrays.copyOf(results, count);
+    }
+
+    private int compare(final int word, final String prefix) {
+        final int start = mIndex.getInt(mOffsetsAt + word * 4);
+        final int length = mIndex.getInt(mOffsetsAt + (word + 1) * 4) - start;
+        for (int i = 0; i < length && i < prefix.length(); i++) {
+            final int c = (mIndex.get(mWordsAt + start + i) & 0xFF) - prefix.charAt(i);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - prefix.length();
+    }
+
+    private boolean startsWith(final int word, final String prefix) {
+        final int start = mIndex.getInt(mOffsetsAt + word * 4);
+        final int length = mIndex.getInt(mOffsetsAt + (word + 1) * 4) - start;
+        if (length < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if ((mIndex.get(mWordsAt + start + i) & 0xFF) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Per country, its names in English and in the given language, lower case, each word after
+     * a space. Slow, as every name is looked up, so made once and off the UI thread.
+     * @param countries ISO country codes
+     */
+    public static String[] getCountryNames(final String[] countries, final Locale language) {
+        final String[] names = new String[countries.length];
+        for (int i = 0; i < countries.length; i++) {
+            final Locale locale = new Locale("", countries[i]);
+            names[i] = " " + locale.getDisplayCountry(Locale.ENGLISH).toLowerCase(Locale.ROOT)
+                    + " " + locale.getDisplayCountry(language).toLowerCase(language);
+        }
+        return names;
+    }
+
+    /**
+     * The countries with a word of their names starting with each of the terms.
+     * @param names from {@link #getCountryNames}
+     * @return indexes into the names, in order
+     */
+    public static int[] matchCountries(final String[] names, final String[] terms) {
+        final int[] results = new int[names.length];
+        int count = 0;
+        for (int i = 0; i < names.length; i++) {
+            if (terms.length > 0 && matchesAll(names[i], terms)) {
+                results[count++] = i;
+            }
+        }
+        return Arrays.copyOf(results, count);
+    }
+
+    private static boolean matchesAll(final String names, final String[] terms) {
+        for (final String term : terms) {
+            if (!hasWordStartingWith(names, term)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasWordStartingWith(final String names, final String term) {
+        for (int i = names.indexOf(term, 1); i > 0; i = names.indexOf(term, i + 1)) {
+            if (names.charAt(i - 1) == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,113 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steps through some groups of the {@link EmojiCatalogue} a page at a time, for the emoji and
+ * flag modes.
+ *
+ * The eight outer quadrants hold the page's emoji and the centre quadrant holds the page keys,
+ * as with {@link UnicodePages}. Paging runs on from the end of one group into the next, and
+ * wraps round at either end.
+ */
+public final class EmojiPages {
+    private static final int SIZE = 9;
+
+    private final boolean mIsRegional;
+    // Catalogue groups this shows, found when first shown so the catalogue loads lazily.
+    private int[] mGroups;
+    private int mGroup;
+    private int mPage;
+    private String[][] mGrid;
+
+    /**
+     * @param isRegional whether to show the groups with country flags, or all the others
+     */
+    public EmojiPages(final boolean isRegional) {
+        mIsRegional = isRegional;
+    }
+
+    private int[] getGroups() {
+        if (mGroups == null) {
+            final List<Integer> groups = new ArrayList<>();
+            for (int g = 0; g < EmojiCatalogue.getGroupCount(); g++) {
+                if (EmojiCatalogue.isRegional(g) == mIsRegional
+                        && EmojiCatalogue.getPageCount(g) > 0) {
+                    groups.add(g);
+                }
+            }
+            mGroups = new int[groups.size()];
+            for (int i = 0; i < mGroups.length; i++) {
+                mGroups[i] = groups.get(i);
+            }
+        }
+        return mGroups;
+    }
+
+    /**
+     * The current page.
+     * @param centre the 3x3 navigation cells for the centre quadrant
+     * @param nul the empty cell
+     */
+    public String[][] getPage(final String[][] centre, final String nul) {
+        if (mGrid != null) {
+            return mGrid;
+        }
+        final String[][] grid = new String[SIZE][SIZE];
+        final int[] groups = getGroups();
+        final String[] emoji = groups.length == 0 ? new String[EmojiCatalogue.PAGE_SIZE]
+                : EmojiCatalogue.getPage(groups[mGroup], mPage);
+        int i = 0;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (row / 3 == 1 && col / 3 == 1) {
+                    grid[row][col] = centre[row - 3][col - 3];
+                    continue;
+                }
+                grid[row][col] = emoji[i] != null ? emoji[i] : nul;
+                i++;
+            }
+        }
+        mGrid = grid;
+        return grid;
+    }
+
+    public void nextPage() {
+        final int[] groups = getGroups();
+        if (groups.length == 0) return;
+        mPage++;
+        if (mPage >= EmojiCatalogue.getPageCount(groups[mGroup])) {
+            mGroup = (mGroup + 1) % groups.length;
+            mPage = 0;
+        }
+        mGrid = null;
+    }
+
+    public void previousPage() {
+        final int[] groups = getGroups();
+        if (groups.length == 0) return;
+        mPage--;
+        if (mPage < 0) {
+            mGroup = (mGroup + groups.length - 1) % groups.length;
+            mPage = EmojiCatalogue.getPageCount(groups[mGroup]) - 1;
+        }
+        mGrid = null;
+    }
+
+    /** Move to the first page of the next group. */
+    public void nextGroup() {
+        final int[] groups = getGroups();
+        if (groups.length == 0) return;
+        mGroup = (mGroup + 1) % groups.length;
+        mPage = 0;
+        mGrid = null;
+    }
+
+    /** The label of the group {@link #nextGroup} moves to. */
+    public String getNextGroupLabel() {
+        final int[] groups = getGroups();
+        if (groups.length == 0) return "";
+        return EmojiCatalogue.getGroupLabel(groups[(mGroup + 1) % groups.length]);
+    }
+}
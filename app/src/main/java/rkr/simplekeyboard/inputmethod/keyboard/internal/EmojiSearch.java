@@ -0,0 +1,185 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import rkr.simplekeyboard.inputmethod.latin.utils.ExecutorUtils;
+
+/**
+ * Finds emoji by the words of their names, and holds the pages of the last search's results.
+ *
+ * The index is searched by {@link EmojiNameIndex}. It is stored uncompressed and memory-mapped,
+ * so only the parts a search touches are read in. Country flags are found by the country's name,
+ * in English and in the device language, the names being made in the background.
+ *
+ * Only used on the UI thread, apart from making the country names.
+ */
+public final class EmojiSearch {
+    private static final String TAG = EmojiSearch.class.getSimpleName();
+    private static final String ASSET = "emoji-names.idx";
+    private static final int SIZE = 9;
+
+    private static final Handler sUiHandler = new Handler(Looper.getMainLooper());
+    private static Context sContext;
+    private static boolean sIsLoaded;
+    private static EmojiNameIndex sIndex;
+    // The countries and their names in lower case, made in the background for the device
+    // language. Null until the first are made.
+    private static String[] sCountries;
+    private static String[] sCountryNames;
+    private static Locale sCountryNamesLocale;
+
+    private static String sQuery = "";
+    private static String[] sResults = new String[0];
+    private static int sPage;
+    private static String[][] sGrid;
+
+    private EmojiSearch() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Make the country names in the background, the first time and when the device language has
+     * changed.
+     */
+    public static void init(final Context context) {
+        sContext = context.getApplicationContext();
+        final Locale locale = Locale.getDefault();
+        if (locale.equals(sCountryNamesLocale)) {
+            return;
+        }
+        sCountryNamesLocale = locale;
+        final String[] countries = EmojiCatalogue.getCountries();
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final String[] names = EmojiNameIndex.getCountryNames(countries, locale);
+                sUiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        sCountries = countries;
+                        sCountryNames = names;
+                    }
+                });
+            }
+        });
+    }
+
+    private static void load() {
+        if (sIsLoaded || sContext == null) {
+            return;
+        }
+        sIsLoaded = true;
+        try {
+            sIndex = new EmojiNameIndex(open());
+        } catch (final IOException | RuntimeException e) {
+            Log.e(TAG, "Can't load the emoji index", e);
+        }
+    }
+
+    private static ByteBuffer open() throws IOException {
+        try (AssetFileDescriptor fd = sContext.getAssets().openFd(ASSET);
+                FileInputStream in = fd.createInputStream()) {
+            // The mapping stays valid after the file is closed.
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(),
+                    fd.getLength());
+        } catch (final IOException e) {
+            // Compressed in the APK, so it can't be mapped; read it instead.
+            try (InputStream in = sContext.getAssets().open(ASSET)) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+                return ByteBuffer.wrap(out.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * Search for the emoji with a word starting with each word of the query, and show the first
+     * page of them.
+     */
+    public static void search(final String query) {
+        load();
+        sQuery = query.trim().toLowerCase(Locale.ROOT);
+        final String[] terms = EmojiNameIndex.getTerms(sQuery);
+        final List<String> results = new ArrayList<>();
+        if (terms.length > 0 && sIndex != null) {
+            for (final int reference : sIndex.query(terms)) {
+                final String emoji = EmojiCatalogue.getEmoji(reference);
+                if (emoji != null) {
+                    results.add(emoji);
+                }
+            }
+        }
+        // No flags for a search made before the names are, just after the keyboard starts.
+        if (sCountryNames != null) {
+            for (final int country : EmojiNameIndex.matchCountries(sCountryNames, terms)) {
+                results.add(EmojiCatalogue.toFlag(sCountries[country]));
+            }
+        }
+        sResults = results.toArray(new String[0]);
+        sPage = 0;
+        sGrid = null;
+    }
+
+    /** The last query, as searched for. */
+    public static String getQuery() {
+        return sQuery;
+    }
+
+    /**
+     * The current page of results.
+     * @param centre the 3x3 navigation cells for the centre quadrant
+     * @param nul the empty cell
+     */
+    public static String[][] getPage(final String[][] centre, final String nul) {
+        if (sGrid != null) {
+            return sGrid;
+        }
+        final String[][] grid = new String[SIZE][SIZE];
+        int i = sPage * EmojiCatalogue.PAGE_SIZE;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (row / 3 == 1 && col / 3 == 1) {
+                    grid[row][col] = centre[row - 3][col - 3];
+                    continue;
+                }
+                grid[row][col] = i < sResults.length ? sResults[i] : nul;
+                i++;
+            }
+        }
+        sGrid = grid;
+        return grid;
+    }
+
+    public static void nextPage() {
+        sPage = (sPage + 1) % getPageCount();
+        sGrid = null;
+    }
+
+    public static void previousPage() {
+        sPage = (sPage + getPageCount() - 1) % getPageCount();
+        sGrid = null;
+    }
+
+    private static int getPageCount() {
+        return Math.max(1, (sResults.length + EmojiCatalogue.PAGE_SIZE - 1)
+                / EmojiCatalogue.PAGE_SIZE);
+    }
+}
@@ -0,0 +1,51 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.view.Choreographer;
+import android.view.View;
+
+/**
+ * Collects invalidation requests for a view and applies them at most once per display frame.
+ *
+ * A press followed by a fast release, or a mode change in the same frame, would otherwise
+ * schedule one traversal per event. Instead the request is remembered here and a single
+ * {@link Choreographer.FrameCallback} invalidates the whole view. Only whole-view invalidation
+ * is used: with hardware acceleration the view is redrawn in full whatever region is dirtied.
+ */
+public final class FrameInvalidationScheduler implements Choreographer.FrameCallback {
+    private final View mView;
+    private final Choreographer mChoreographer;
+    private boolean mIsFramePosted;
+
+    public FrameInvalidationScheduler(final View view) {
+        mView = view;
+        // Must be created on the UI thread, which owns the view.
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Request a redraw on the next frame. Requests made before that frame share the one redraw.
+     */
+    public void invalidate() {
+        if (mIsFramePosted) {
+            return;
+        }
+        mIsFramePosted = true;
+        mChoreographer.postFrameCallback(this);
+    }
+
+    /**
+     * Drop any pending invalidation, for example when the view is detached.
+     */
+    public void cancel() {
+        if (mIsFramePosted) {
+            mChoreographer.removeFrameCallback(this);
+            mIsFramePosted = false;
+        }
+    }
+
+    @Override
+    public void doFrame(final long frameTimeNanos) {
+        mIsFramePosted = false;
+        mView.invalidate();
+    }
+}
@@ -0,0 +1,182 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.content.Context;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
+
+/**
+ * A bitset of the code points the keyboard font can draw, so pages full of missing glyphs can be
+ * skipped.
+ *
+ * Asking {@link Paint#hasGlyph} about every code point takes seconds, so the set is built once
+ * on a background thread of its own and saved to a file in the cache directory. The file is
+ * keyed by the system build, since that is when the fonts change, and later launches memory-map
+ * it and read the bits straight out of the mapping. Until the index is ready, code points are judged by
+ * their Unicode category alone.
+ */
+public final class GlyphIndex {
+    private static final String TAG = GlyphIndex.class.getSimpleName();
+    private static final String FILE_NAME = "glyph-index.bin";
+    private static final String THREAD_NAME = "GlyphIndex";
+    private static final int MAGIC = 0x4B39474C; // "K9GL"
+    private static final int VERSION = 1;
+    // The font the keyboard draws with, Typeface.MONOSPACE.
+    private static final String FONT_NAME = "monospace";
+    // Planes 0 to 3: everything but the tag and private use planes.
+    public static final int MAX_CODE_POINT = 0x3FFFF;
+    private static final int WORDS = (MAX_CODE_POINT + 1) / 64;
+    // int magic, int version, long font key.
+    private static final int HEADER_SIZE = 16;
+
+    private static Context sContext;
+    private static boolean sIsLoadStarted;
+    private static volatile LongBuffer sBits;
+
+    private GlyphIndex() {
+        // This utility class is not publicly instantiable.
+    }
+
+    public static void init(final Context context) {
+        sContext = context.getApplicationContext();
+    }
+
+    /**
+     * Start loading, or building, the index in the background. Only the first call does
+     * anything.
+     */
+    public static void load() {
+        if (sIsLoadStarted || sContext == null) {
+            return;
+        }
+        sIsLoadStarted = true;
+        final File file = new File(sContext.getCacheDir(), FILE_NAME);
+        // A thread of its own, since a build would hold up everything queued on the shared
+        // background executor for seconds.
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    sBits = loadOrBuild(file);
+                } catch (final IOException e) {
+                    Log.w(TAG, "Can't use the glyph index file", e);
+                }
+            }
+        }, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public static boolean isReady() {
+        return sBits != null;
+    }
+
+    /**
+     * Whether the code point is worth showing: assigned, printable, and drawable by the font
+     * once the index is ready.
+     */
+    public static boolean isDrawable(final int codePoint) {
+        if (codePoint < 0 || codePoint > MAX_CODE_POINT) {
+            return false;
+        }
+        final LongBuffer bits = sBits;
+        if (bits == null) {
+            return isPrintable(codePoint);
+        }
+        return (bits.get(codePoint >>> 6) & (1L << (codePoint & 63))) != 0;
+    }
+
+    private static boolean isPrintable(final int codePoint) {
+        if (!Character.isDefined(codePoint)) {
+            return false;
+        }
+        switch (Character.getType(codePoint)) {
+        case Character.CONTROL:
+        case Character.FORMAT:
+        case Character.SURROGATE:
+        case Character.PRIVATE_USE:
+        case Character.UNASSIGNED:
+        case Character.SPACE_SEPARATOR:
+        case Character.LINE_SEPARATOR:
+        case Character.PARAGRAPH_SEPARATOR:
+            return false;
+        default:
+            return true;
+        }
+    }
+
+    // Only from values that are the same in every process: a Typeface's hash code isn't.
+    private static long getFontKey() {
+        final String key = Build.FINGERPRINT + '/' + FONT_NAME + '/' + VERSION;
+        // 64-bit FNV-1a, so two builds are very unlikely to share a key.
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static LongBuffer loadOrBuild(final File file) throws IOException {
+        final long fontKey = getFontKey();
+        final long size = HEADER_SIZE + WORDS * 8L;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            final FileChannel channel = raf.getChannel();
+            if (raf.length() == size) {
+                final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                if (map.getInt(0) == MAGIC && map.getInt(4) == VERSION
+                        && map.getLong(8) == fontKey) {
+                    map.position(HEADER_SIZE);
+                    return map.slice().asLongBuffer();
+                }
+            }
+
+            final long startTime = System.currentTimeMillis();
+            raf.setLength(size);
+            final MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            // Clear the magic first, so a build that is killed half way is never trusted.
+            map.putInt(0, 0);
+            final Paint paint = new Paint();
+            paint.setTypeface(Typeface.MONOSPACE);
+            for (int word = 0; word < WORDS; word++) {
+                long bits = 0;
+                for (int bit = 0; bit < 64; bit++) {
+                    final int codePoint = word * 64 + bit;
+                    if (isPrintable(codePoint) && hasGlyph(paint, codePoint)) {
+                        bits |= 1L << bit;
+                    }
+                }
+                map.putLong(HEADER_SIZE + word * 8, bits);
+            }
+            map.putInt(4, VERSION);
+            map.putLong(8, fontKey);
+            map.putInt(0, MAGIC);
+            map.force();
+            if (DebugFlags.DEBUG_ENABLED) {
+                Log.d(TAG, "Built glyph index in " + (System.currentTimeMillis() - startTime)
+                        + "ms");
+            }
+            map.position(HEADER_SIZE);
+            return map.slice().asLongBuffer();
+        }
+    }
+
+    private static boolean hasGlyph(final Paint paint, final int codePoint) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            // No way to ask the font before Marshmallow, so trust the Unicode category.
+            return true;
+        }
+        return paint.hasGlyph(new String(Character.toChars(codePoint)));
+    }
+}
@@ -0,0 +1,420 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import rkr.simplekeyboard.inputmethod.latin.utils.ExecutorUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.MemoryTrimmer;
+
+/**
+ * The emoji, symbols and other less common characters typed most, for the recent page.
+ *
+ * Each one has a use count that decays by half every {@link #HALF_LIFE} uses of anything else,
+ * so what is used now soon outranks what was used a lot long ago. The counts are kept in
+ * parallel arrays and saved to a file in the files directory that is only ever appended to:
+ * one record per use, written on the background executor so the touch path never waits on the
+ * disk. Once the file has many more records than there are counts, it is rewritten in the
+ * background as one record per count. Each record ends with a checksum, and the file is cut back
+ * to its last good record when it is read, so a record cut short by the process being killed
+ * doesn't garble the ones appended after it. When memory runs low the counts are dropped, as
+ * every use is already on its way to the file, and they are read again when next wanted.
+ *
+ * Only used on the UI thread, apart from the file work.
+ */
+public final class RecentOutputs {
+    private static final String TAG = RecentOutputs.class.getSimpleName();
+    private static final String FILE_NAME = "recent-outputs.bin";
+    private static final int MAGIC = 0x4B395243; // "K9RC"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final byte RECORD_USE = 1;
+    private static final byte RECORD_COUNT = 2;
+    /** Most outputs counted; the least used is forgotten to make room. */
+    private static final int MAX_ENTRIES = 256;
+    private static final double HALF_LIFE = 100;
+    // Rewrite the file once it has this many use records since it was last rewritten.
+    private static final int COMPACT_AFTER = 4 * MAX_ENTRIES;
+    /** Outputs shown: all the cells but the centre quadrant. */
+    public static final int PAGE_SIZE = 72;
+    private static final int SIZE = 9;
+
+    /** Decayed use counts, as parallel arrays. */
+    private static final class Counts {
+        final String[] mTexts = new String[MAX_ENTRIES];
+        final float[] mCounts = new float[MAX_ENTRIES];
+        // The tick each count was last brought up to date at.
+        final int[] mTicks = new int[MAX_ENTRIES];
+        int mSize;
+        // Uses so far, of anything; the clock the decay runs on.
+        int mTick;
+
+        float getCount(final int i, final int tick) {
+            return (float) (mCounts[i] * Math.pow(0.5, (tick - mTicks[i]) / HALF_LIFE));
+        }
+
+        void set(final String text, final float count, final int tick) {
+            int i = indexOf(text);
+            if (i < 0) {
+                i = mSize < MAX_ENTRIES ? mSize++ : indexOfLeastUsed(tick);
+                mTexts[i] = text;
+            }
+            mCounts[i] = count;
+            mTicks[i] = tick;
+            mTick = Math.max(mTick, tick);
+        }
+
+        void use(final String text, final int tick) {
+            final int i = indexOf(text);
+            set(text, (i < 0 ? 0 : getCount(i, tick)) + 1, tick);
+        }
+
+        int indexOf(final String text) {
+            for (int i = 0; i < mSize; i++) {
+                if (mTexts[i].equals(text)) return i;
+            }
+            return -1;
+        }
+
+        int indexOfLeastUsed(final int tick) {
+            int least = 0;
+            for (int i = 1; i < mSize; i++) {
+                if (getCount(i, tick) < getCount(least, tick)) least = i;
+            }
+            return least;
+        }
+
+        Counts copy() {
+            final Counts copy = new Counts();
+            System.arraycopy(mTexts, 0, copy.mTexts, 0, mSize);
+            System.arraycopy(mCounts, 0, copy.mCounts, 0, mSize);
+            System.arraycopy(mTicks, 0, copy.mTicks, 0, mSize);
+            copy.mSize = mSize;
+            copy.mTick = mTick;
+            return copy;
+        }
+    }
+
+    private static final Handler sUiHandler = new Handler(Looper.getMainLooper());
+    private static File sFile;
+    // Null until the file has been read, and after the counts have been trimmed.
+    private static Counts sCounts;
+    private static boolean sIsLoading;
+    // Uses before the file was read, counted once it is.
+    private static final ArrayList<String> sPendingUses = new ArrayList<>();
+    private static int sRecordsSinceCompaction;
+    private static String[][] sGrid;
+
+    private static final MemoryTrimmer.Trimmable sTrimmable = new MemoryTrimmer.Trimmable() {
+        @Override
+        public void releaseMemory() {
+            sCounts = null;
+            sGrid = null;
+        }
+
+        @Override
+        public void rebuild() {
+            load();
+        }
+
+        @Override
+        public long getRetainedBytes() {
+            final Counts counts = sCounts;
+            // The three arrays, and roughly a short string per entry.
+            return counts == null ? 0 : MAX_ENTRIES * 12L + counts.mSize * 48L;
+        }
+    };
+
+    private RecentOutputs() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Start reading the saved counts in the background. Only the first call does anything.
+     */
+    public static void init(final Context context) {
+        if (sFile != null) {
+            return;
+        }
+        sFile = new File(context.getFilesDir(), FILE_NAME);
+        MemoryTrimmer.register(sTrimmable, MemoryTrimmer.TIER_CACHES);
+        load();
+    }
+
+    // Read the counts in the background, unless they are there or on their way.
+    private static void load() {
+        if (sFile == null || sCounts != null || sIsLoading) {
+            return;
+        }
+        sIsLoading = true;
+        final File file = sFile;
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Counts counts = new Counts();
+                final int records = read(file, counts);
+                sUiHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(counts, records);
+                    }
+                });
+            }
+        });
+    }
+
+    private static void onLoaded(final Counts counts, final int records) {
+        sIsLoading = false;
+        sCounts = counts;
+        sRecordsSinceCompaction = records;
+        sGrid = null;
+        for (int i = 0; i < sPendingUses.size(); i++) {
+            use(sPendingUses.get(i));
+        }
+        sPendingUses.clear();
+        if (sRecordsSinceCompaction > COMPACT_AFTER) {
+            compact();
+        }
+    }
+
+    /** Count a use. Cheap enough for the touch path: the file is written in the background. */
+    public static void use(final String text) {
+        if (sFile == null) {
+            return;
+        }
+        if (sCounts == null) {
+            sPendingUses.add(text);
+            load();
+            return;
+        }
+        final int tick = sCounts.mTick + 1;
+        sCounts.use(text, tick);
+        final File file = sFile;
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                append(file, text, tick);
+            }
+        });
+        if (++sRecordsSinceCompaction > COMPACT_AFTER) {
+            compact();
+        }
+    }
+
+    /** Rank the outputs again the next time the page is shown. */
+    public static void refresh() {
+        sGrid = null;
+    }
+
+    /**
+     * The most used outputs, most used first.
+     * @param centre the 3x3 navigation cells for the centre quadrant
+     * @param nul the empty cell
+     */
+    public static String[][] getPage(final String[][] centre, final String nul) {
+        if (sGrid != null) {
+            return sGrid;
+        }
+        load();
+        final String[] ranked = rank();
+        final String[][] grid = new String[SIZE][SIZE];
+        int i = 0;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (row / 3 == 1 && col / 3 == 1) {
+                    grid[row][col] = centre[row - 3][col - 3];
+                    continue;
+                }
+                grid[row][col] = i < ranked.length ? ranked[i] : nul;
+                i++;
+            }
+        }
+        // Not kept until the counts are read, so the page fills in once they are.
+        if (sCounts != null) sGrid = grid;
+        return grid;
+    }
+
+    private static String[] rank() {
+        final Counts counts = sCounts;
+        if (counts == null) {
+            return new String[0];
+        }
+        final int size = counts.mSize;
+        final float[] scores = new float[size];
+        final int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            scores[i] = counts.getCount(i, counts.mTick);
+            order[i] = i;
+        }
+        // Insertion sort: there are only a few hundred, and it keeps ties in a stable order.
+        for (int i = 1; i < size; i++) {
+            final int o = order[i];
+            int j = i - 1;
+            while (j >= 0 && scores[order[j]] < scores[o]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = o;
+        }
+        final String[] ranked = new String[Math.min(size, PAGE_SIZE)];
+        for (int i = 0; i < ranked.length; i++) {
+            ranked[i] = counts.mTexts[order[i]];
+        }
+        return ranked;
+    }
+
+    /** Rewrite the file from a copy of the counts, in the background. */
+    private static void compact() {
+        sRecordsSinceCompaction = 0;
+        final Counts snapshot = sCounts.copy();
+        final File file = sFile;
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                write(file, snapshot);
+            }
+        });
+    }
+
+    // File work, on the background executor only.
+
+    /**
+     * Read the records into the counts, and return how many there were. Anything after the last
+     * good record, like one cut short by the process being killed, is cut off the file, so the
+     * next append follows a good record.
+     */
+    private static int read(final File file, final Counts counts) {
+        int records = 0;
+        // The end of the last good record.
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.w(TAG, "Unknown recent outputs format, starting again");
+                truncate(file, 0);
+                return 0;
+            }
+            good = HEADER_SIZE;
+            while (true) {
+                final byte type = in.readByte();
+                if (type != RECORD_USE && type != RECORD_COUNT) break;
+                final int tick = in.readInt();
+                final float count = type == RECORD_COUNT ? in.readFloat() : 0;
+                final byte[] bytes = new byte[in.readUnsignedShort()];
+                in.readFully(bytes);
+                final String text = new String(bytes, StandardCharsets.UTF_8);
+                final byte[] record = getRecord(type, tick, count, bytes);
+                if (in.readInt() != getChecksum(record)) break;
+                if (type == RECORD_COUNT) {
+                    counts.set(text, count, tick);
+                } else {
+                    counts.use(text, tick);
+                }
+                records++;
+                good += record.length + 4;
+            }
+        } catch (final FileNotFoundException e) {
+            // Nothing used yet.
+            return 0;
+        } catch (final EOFException e) {
+            // The end, or a record cut short.
+        } catch (final IOException e) {
+            Log.w(TAG, "Can't read the recent outputs", e);
+        }
+        if (file.length() > good) {
+            Log.w(TAG, "Dropping " + (file.length() - good) + " bytes after the last good record");
+            truncate(file, good);
+        }
+        return records;
+    }
+
+    private static void truncate(final File file, final long length) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(length);
+        } catch (final IOException e) {
+            Log.w(TAG, "Can't cut back the recent outputs, starting again", e);
+            file.delete();
+        }
+    }
+
+    private static void append(final File file, final String text, final int tick) {
+        // Empty if it was cut back to nothing.
+        final boolean isNew = file.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if (isNew) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            writeRecord(out, RECORD_USE, tick, 0, text);
+        } catch (final IOException e) {
+            Log.w(TAG, "Can't save a recent output", e);
+        }
+    }
+
+    private static void write(final File file, final Counts counts) {
+        final File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < counts.mSize; i++) {
+                writeRecord(out, RECORD_COUNT, counts.mTicks[i], counts.mCounts[i],
+                        counts.mTexts[i]);
+            }
+        } catch (final IOException e) {
+            Log.w(TAG, "Can't compact the recent outputs", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Can't replace the recent outputs file");
+            temp.delete();
+        }
+    }
+
+    private static void writeRecord(final DataOutputStream out, final byte type, final int tick,
+            final float count, final String text) throws IOException {
+        final byte[] record = getRecord(type, tick, count, text.getBytes(StandardCharsets.UTF_8));
+        out.write(record);
+        out.writeInt(getChecksum(record));
+    }
+
+    // A record without its checksum: type, tick, count (count records only), length, text.
+    private static byte[] getRecord(final byte type, final int tick, final float count,
+            final byte[] text) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length + 16);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeInt(tick);
+        if (type == RECORD_COUNT) {
+            out.writeFloat(count);
+        }
+        out.writeShort(text.length);
+        out.write(text);
+        return bytes.toByteArray();
+    }
+
+    private static int getChecksum(final byte[] record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+}
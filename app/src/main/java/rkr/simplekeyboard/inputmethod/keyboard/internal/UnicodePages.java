@@ -0,0 +1,89 @@
+package rkr.simplekeyboard.inputmethod.keyboard.internal;
+
+/**
+ * The pages of the "Unicode pages" mode, which steps through the code space a page at a time.
+ *
+ * A page is made on demand from its base code point: the eight outer quadrants hold the next
+ * {@link #PAGE_SIZE} code points in order, and the centre quadrant holds the page and
+ * navigation keys. Pages where {@link GlyphIndex} says nothing can be drawn are skipped.
+ */
+public final class UnicodePages {
+    /** Cells per page that show code points: all but the centre quadrant. */
+    public static final int PAGE_SIZE = 72;
+    private static final int SIZE = 9;
+    private static final int FIRST_CODE_POINT = 0x20;
+    private static final int LAST_PAGE_BASE = GlyphIndex.MAX_CODE_POINT + 1 - PAGE_SIZE;
+
+    private static int sPageBase = FIRST_CODE_POINT;
+    private static String[][] sPage;
+    // Whether sPage was made before the glyph index was ready, and so may show missing glyphs.
+    private static boolean sIsPageProvisional;
+
+    private UnicodePages() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * The current page.
+     * @param centre the 3x3 navigation cells for the centre quadrant
+     * @param nul the empty cell
+     */
+    public static String[][] getPage(final String[][] centre, final String nul) {
+        GlyphIndex.load();
+        if (sPage != null && !(sIsPageProvisional && GlyphIndex.isReady())) {
+            return sPage;
+        }
+        sIsPageProvisional = !GlyphIndex.isReady();
+        final String[][] page = new String[SIZE][SIZE];
+        int codePoint = sPageBase;
+        for (int row = 0; row < SIZE; row++) {
+            for (int col = 0; col < SIZE; col++) {
+                if (row / 3 == 1 && col / 3 == 1) {
+                    page[row][col] = centre[row - 3][col - 3];
+                    continue;
+                }
+                page[row][col] = GlyphIndex.isDrawable(codePoint)
+                        ? new String(Character.toChars(codePoint)) : nul;
+                codePoint++;
+            }
+        }
+        sPage = page;
+        return page;
+    }
+
+    public static void nextPage() {
+        movePage(PAGE_SIZE);
+    }
+
+    public static void previousPage() {
+        movePage(-PAGE_SIZE);
+    }
+
+    /** Move by whole pages until one has something to draw, wrapping round at either end. */
+    private static void movePage(final int step) {
+        int base = sPageBase;
+        final int pages = (LAST_PAGE_BASE - FIRST_CODE_POINT) / PAGE_SIZE + 1;
+        for (int i = 0; i < pages; i++) {
+            base += step;
+            if (base > LAST_PAGE_BASE) {
+                base = FIRST_CODE_POINT;
+            } else if (base < FIRST_CODE_POINT) {
+                base = FIRST_CODE_POINT + (pages - 1) * PAGE_SIZE;
+            }
+            if (hasDrawable(base)) {
+                break;
+            }
+        }
+        sPageBase = base;
+        sPage = null;
+    }
+
+    private static boolean hasDrawable(final int base) {
+        for (int codePoint = base; codePoint < base + PAGE_SIZE; codePoint++) {
+            if (GlyphIndex.isDrawable(codePoint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -18,7 +18,9 @@ package rkr.simplekeyboard.inputmethod.latin;
 
 import android.content.Context;
 import android.media.AudioManager;
+import android.os.SystemClock;
 import android.os.Vibrator;
+import android.util.Log;
 import android.view.HapticFeedbackConstants;
 import android.view.View;
 
@@ -32,11 +34,24 @@ import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
  * complexity of settings and the like.
  */
 public final class AudioAndHapticFeedbackManager {
+    private static final String TAG = AudioAndHapticFeedbackManager.class.getSimpleName();
+    // Benchmark mode: log the average time from the keypress to the sound being handed over.
+    private static final boolean BENCHMARK_AUDIO_LATENCY = false;
+    private static final int BENCHMARK_REPORT_INTERVAL = 50;
+
     private AudioManager mAudioManager;
     private Vibrator mVibrator;
-
-    private SettingsValues mSettingsValues;
-    private boolean mSoundOn;
+    private KeypressSoundPool mSoundPool;
+    private HapticFeedbackWorker mHapticWorker;
+    private long mBenchmarkTotalNanos;
+    private int mBenchmarkCount;
+
+    // Set by Settings each time it publishes, possibly from another thread.
+    private volatile SettingsValues mSettingsValues;
+    private volatile boolean mSoundOn;
+    // Precomputed from the settings and the ringer mode, so that when sound and vibration are
+    // both off a touch reads this and goes no further.
+    private static volatile boolean sIsFeedbackEnabled;
 
     private static final AudioAndHapticFeedbackManager sInstance =
             new AudioAndHapticFeedbackManager();
@@ -56,32 +71,67 @@ public final class AudioAndHapticFeedbackManager {
     private void initInternal(final Context context) {
         mAudioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
         mVibrator = (Vibrator) context.getSystemService(Context.VIBRATOR_SERVICE);
+        if (mVibrator != null && mHapticWorker == null) {
+            mHapticWorker = new HapticFeedbackWorker(mVibrator);
+        }
+        if (mSoundPool == null) {
+            mSoundPool = KeypressSoundPool.create(context);
+        }
+    }
+
+    public void release() {
+        if (mSoundPool != null) {
+            mSoundPool.release();
+            mSoundPool = null;
+        }
+        if (mHapticWorker != null) {
+            mHapticWorker.quit();
+        }
     }
 
     public boolean hasVibrator() {
         return mVibrator != null && mVibrator.hasVibrator();
     }
 
+    /**
+     * Vibrate for the given duration. The call to the vibrator service is made on the haptic
+     * worker thread, so this returns immediately.
+     */
     public void vibrate(final long milliseconds) {
-        if (mVibrator == null) {
+        if (mHapticWorker == null) {
             return;
         }
-        mVibrator.vibrate(milliseconds);
+        mHapticWorker.vibrate(milliseconds);
     }
 
     private boolean reevaluateIfSoundIsOn() {
-        if (mSettingsValues == null || !mSettingsValues.mSoundOn || mAudioManager == null) {
+        final SettingsValues settingsValues = mSettingsValues;
+        if (settingsValues == null || !settingsValues.mSoundOn || mAudioManager == null) {
             return false;
         }
         return mAudioManager.getRingerMode() == AudioManager.RINGER_MODE_NORMAL;
     }
 
+    /**
+     * Whether a keypress would produce any sound or vibration with the latest published settings
+     * and the ringer mode. Only reads a flag, so it can be asked on every touch.
+     */
+    public static boolean isFeedbackEnabled() {
+        return sIsFeedbackEnabled;
+    }
+
     public void performAudioFeedback(final int code) {
         // if mAudioManager is null, we can't play a sound anyway, so return
         if (mAudioManager == null) {
             return;
         }
-        if (!mSoundOn) {
+        final long startNanos = BENCHMARK_AUDIO_LATENCY ? SystemClock.elapsedRealtimeNanos() : 0;
+        final SettingsValues settingsValues = mSettingsValues;
+        if (!mSoundOn || settingsValues == null) {
+            return;
+        }
+        if (mSoundPool != null && mSoundPool.play(code, settingsValues.mKeypressSoundVolume)) {
+            if (BENCHMARK_AUDIO_LATENCY) recordAudioLatency("SoundPool", startNanos);
             return;
         }
         final int sound;
@@ -99,15 +149,26 @@ public final class AudioAndHapticFeedbackManager {
             sound = AudioManager.FX_KEYPRESS_STANDARD;
             break;
         }
-        mAudioManager.playSoundEffect(sound, mSettingsValues.mKeypressSoundVolume);
+        mAudioManager.playSoundEffect(sound, settingsValues.mKeypressSoundVolume);
+        if (BENCHMARK_AUDIO_LATENCY) recordAudioLatency("AudioManager", startNanos);
+    }
+
+    private void recordAudioLatency(final String backend, final long startNanos) {
+        mBenchmarkTotalNanos += SystemClock.elapsedRealtimeNanos() - startNanos;
+        if (++mBenchmarkCount % BENCHMARK_REPORT_INTERVAL == 0) {
+            Log.d(TAG, backend + ": average keypress to sound latency = "
+                    + (mBenchmarkTotalNanos / mBenchmarkCount / 1000) + " us over "
+                    + mBenchmarkCount + " keys");
+        }
     }
 
     public void performHapticFeedback(final View viewToPerformHapticFeedbackOn) {
-        if (!mSettingsValues.mVibrateOn) {
+        final SettingsValues settingsValues = mSettingsValues;
+        if (settingsValues == null || !settingsValues.mVibrateOn) {
             return;
         }
-        if (mSettingsValues.mKeypressVibrationDuration >= 0) {
-            vibrate(mSettingsValues.mKeypressVibrationDuration);
+        if (settingsValues.mKeypressVibrationDuration >= 0) {
+            vibrate(settingsValues.mKeypressVibrationDuration);
             return;
         }
         // Go ahead with the system default
@@ -118,12 +179,23 @@ public final class AudioAndHapticFeedbackManager {
         }
     }
 
+    /**
+     * Called by Settings with each snapshot it publishes, and once the audio and vibrator
+     * services are known.
+     */
     public void onSettingsChanged(final SettingsValues settingsValues) {
         mSettingsValues = settingsValues;
         mSoundOn = reevaluateIfSoundIsOn();
+        sIsFeedbackEnabled = mSoundOn || (settingsValues.mVibrateOn && hasVibrator());
+        if (mHapticWorker != null && settingsValues.mVibrateOn) {
+            mHapticWorker.prepare(settingsValues.mKeypressVibrationDuration);
+        }
     }
 
     public void onRingerModeChanged() {
+        final SettingsValues settingsValues = mSettingsValues;
         mSoundOn = reevaluateIfSoundIsOn();
+        sIsFeedbackEnabled = mSoundOn || (settingsValues != null && settingsValues.mVibrateOn
+                && hasVibrator());
     }
 }
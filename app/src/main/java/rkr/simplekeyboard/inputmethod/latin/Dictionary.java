@@ -0,0 +1,79 @@
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import rkr.simplekeyboard.inputmethod.latin.common.DictionaryTrie;
+
+/**
+ * Completes a word from what has been typed of it, with the most frequent words that start so.
+ *
+ * The words are compiled from app/src/main/dictionary by the layouttools DictionaryCompiler into
+ * a trie, searched by {@link DictionaryTrie}. It is stored uncompressed and memory-mapped, so
+ * opening it reads nothing in and it doesn't live on the heap.
+ *
+ * The mapping is only read, so a dictionary can be used from any thread.
+ */
+public final class Dictionary {
+    private static final String TAG = Dictionary.class.getSimpleName();
+    private static final String ASSET = "dictionary.idx";
+    private static final int MAGIC = 0x4B394454; // "K9DT"
+    private static final int VERSION = 1;
+    /** The longest word looked for; the list has nothing longer. */
+    public static final int MAX_WORD_LENGTH = DictionaryTrie.MAX_WORD_LENGTH;
+
+    private final DictionaryTrie mTrie;
+
+    private Dictionary(final ByteBuffer trie) {
+        mTrie = new DictionaryTrie(trie);
+    }
+
+    /**
+     * Open the dictionary in the app assets, or return null if it can't be.
+     */
+    public static Dictionary open(final Context context) {
+        try {
+            final ByteBuffer trie = map(context);
+            if (trie.getInt(0) != MAGIC || trie.getInt(4) != VERSION) {
+                throw new IOException("Unknown dictionary format");
+            }
+            return new Dictionary(trie);
+        } catch (final IOException | RuntimeException e) {
+            Log.e(TAG, "Can't open the dictionary", e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer map(final Context context) throws IOException {
+        try (AssetFileDescriptor fd = context.getAssets().openFd(ASSET);
+                FileInputStream in = fd.createInputStream()) {
+            // The mapping stays valid after the file is closed.
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY, fd.getStartOffset(),
+                    fd.getLength());
+        } catch (final IOException e) {
+            // Compressed in the APK, so it can't be mapped; read it instead.
+            try (InputStream in = context.getAssets().open(ASSET)) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, read);
+                }
+                return ByteBuffer.wrap(out.toByteArray());
+            }
+        }
+    }
+
+    /** See {@link DictionaryTrie#getCompletions}. */
+    public String[] getCompletions(final String prefix, final int limit) {
+        return mTrie.getCompletions(prefix, limit);
+    }
+}
@@ -0,0 +1,113 @@
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.VibrationEffect;
+import android.os.Vibrator;
+import android.util.LongSparseArray;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs keypress vibrations on a dedicated low priority thread.
+ *
+ * {@link Vibrator#vibrate} is a binder call into the vibrator service, so it must not be made
+ * from the touch path. Requests are coalesced: while a vibration is waiting to run, further
+ * requests only update its duration, so a burst of presses never builds up a backlog.
+ */
+final class HapticFeedbackWorker {
+    private static final String THREAD_NAME = "KeyboardHaptics";
+
+    private final Vibrator mVibrator;
+    private final AtomicBoolean mIsVibrationQueued = new AtomicBoolean(false);
+    private volatile long mPendingDuration;
+    private Handler mHandler;
+    // Only touched on the worker thread. Holds one effect per duration that has been requested,
+    // which in practice is the current setting and the one the settings preview is trying out.
+    private LongSparseArray<Object> mEffects;
+
+    private final Runnable mVibrateTask = new Runnable() {
+        @Override
+        public void run() {
+            // Clear the flag before reading the duration so a request arriving meanwhile is
+            // either picked up here or posts a new task.
+            mIsVibrationQueued.set(false);
+            vibrateOnWorker(mPendingDuration);
+        }
+    };
+
+    HapticFeedbackWorker(final Vibrator vibrator) {
+        mVibrator = vibrator;
+    }
+
+    private synchronized Handler getHandler() {
+        if (mHandler == null) {
+            final HandlerThread thread = new HandlerThread(THREAD_NAME,
+                    Process.THREAD_PRIORITY_BACKGROUND);
+            thread.start();
+            mHandler = new Handler(thread.getLooper());
+        }
+        return mHandler;
+    }
+
+    /**
+     * Build the effect for the given duration ahead of the first keypress that needs it.
+     */
+    public void prepare(final long milliseconds) {
+        if (milliseconds <= 0 || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return;
+        }
+        getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                getEffect(milliseconds);
+            }
+        });
+    }
+
+    /**
+     * Queue a vibration. Never blocks: if one is already queued, it takes this duration instead.
+     */
+    public void vibrate(final long milliseconds) {
+        if (milliseconds <= 0) {
+            return;
+        }
+        mPendingDuration = milliseconds;
+        if (mIsVibrationQueued.compareAndSet(false, true)) {
+            getHandler().post(mVibrateTask);
+        }
+    }
+
+    public synchronized void quit() {
+        if (mHandler != null) {
+            mHandler.getLooper().quitSafely();
+            mHandler = null;
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void vibrateOnWorker(final long milliseconds) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            mVibrator.vibrate(getEffect(milliseconds));
+        } else {
+            mVibrator.vibrate(milliseconds);
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    private VibrationEffect getEffect(final long milliseconds) {
+        if (mEffects == null) {
+            mEffects = new LongSparseArray<>();
+        }
+        VibrationEffect effect = (VibrationEffect) mEffects.get(milliseconds);
+        if (effect == null) {
+            effect = VibrationEffect.createOneShot(milliseconds,
+                    VibrationEffect.DEFAULT_AMPLITUDE);
+            mEffects.put(milliseconds, effect);
+        }
+        return effect;
+    }
+}
@@ -0,0 +1,83 @@
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.view.inputmethod.EditorInfo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Small LRU cache of {@link InputAttributes}, so that switching back and forth between a few
+ * text fields (chat, search, URL bar) is a lookup instead of a rebuild.
+ *
+ * Entries are keyed by target package, input type and fullscreen mode, which are all that the
+ * {@link InputAttributes} constructor reads. Only used on the UI thread.
+ */
+final class InputAttributesCache {
+    private static final int MAX_ENTRIES = 8;
+
+    private static final class Key {
+        final String mPackageName;
+        final int mInputType;
+        final boolean mIsFullscreenMode;
+
+        Key(final EditorInfo editorInfo, final boolean isFullscreenMode) {
+            mPackageName = null != editorInfo ? editorInfo.packageName : null;
+            mInputType = null != editorInfo ? editorInfo.inputType : 0;
+            mIsFullscreenMode = isFullscreenMode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return mInputType == other.mInputType
+                    && mIsFullscreenMode == other.mIsFullscreenMode
+                    && (mPackageName == null ? other.mPackageName == null
+                            : mPackageName.equals(other.mPackageName));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mPackageName == null ? 0 : mPackageName.hashCode();
+            result = 31 * result + mInputType;
+            result = 31 * result + (mIsFullscreenMode ? 1 : 0);
+            return result;
+        }
+    }
+
+    private final LinkedHashMap<Key, InputAttributes> mCache =
+            new LinkedHashMap<Key, InputAttributes>(MAX_ENTRIES, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<Key, InputAttributes> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    private int mHitCount;
+    private int mMissCount;
+
+    public InputAttributes get(final EditorInfo editorInfo, final boolean isFullscreenMode) {
+        final Key key = new Key(editorInfo, isFullscreenMode);
+        InputAttributes inputAttributes = mCache.get(key);
+        if (inputAttributes != null) {
+            mHitCount++;
+            return inputAttributes;
+        }
+        mMissCount++;
+        inputAttributes = new InputAttributes(editorInfo, isFullscreenMode);
+        mCache.put(key, inputAttributes);
+        return inputAttributes;
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public int size() {
+        return mCache.size();
+    }
+}
@@ -0,0 +1,185 @@
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+import android.util.Log;
+import android.util.SparseBooleanArray;
+
+import rkr.simplekeyboard.inputmethod.R;
+import rkr.simplekeyboard.inputmethod.latin.common.Constants;
+import rkr.simplekeyboard.inputmethod.latin.utils.ExecutorUtils;
+
+/**
+ * Keypress sounds played from short samples preloaded into a {@link SoundPool}.
+ *
+ * {@link AudioManager#playSoundEffect} can't be preloaded and its latency depends on the vendor.
+ * Here the samples are decoded once in the background, and each keypress is a single
+ * {@link SoundPool#play} of an already loaded sample.
+ */
+final class KeypressSoundPool {
+    private static final String TAG = KeypressSoundPool.class.getSimpleName();
+    private static final int MAX_STREAMS = 2;
+    // Volume used when the keypress sound volume is the system default (negative).
+    private static final float DEFAULT_VOLUME = 1.0f;
+
+    private static final int SAMPLE_STANDARD = 0;
+    private static final int SAMPLE_DELETE = 1;
+    private static final int SAMPLE_RETURN = 2;
+    private static final int SAMPLE_SPACEBAR = 3;
+    private static final int[] SAMPLE_RESOURCES = {
+            R.raw.keypress_standard,
+            R.raw.keypress_delete,
+            R.raw.keypress_return,
+            R.raw.keypress_spacebar,
+    };
+
+    private final SoundPool mSoundPool;
+    // Guards everything below, which is shared by the loading task and the UI thread.
+    private final Object mLock = new Object();
+    // SoundPool sample ids, indexed by SAMPLE_*. Zero until load() has returned.
+    private final int[] mSampleIds = new int[SAMPLE_RESOURCES.length];
+    private final boolean[] mIsSampleLoaded = new boolean[SAMPLE_RESOURCES.length];
+    // Samples whose loading completed before load() returned their id.
+    private final SparseBooleanArray mEarlyLoadedIds = new SparseBooleanArray();
+    private boolean mIsLoading;
+    private boolean mIsReleased;
+
+    @SuppressWarnings("deprecation")
+    private KeypressSoundPool() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            mSoundPool = new SoundPool.Builder()
+                    .setMaxStreams(MAX_STREAMS)
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_ASSISTANCE_SONIFICATION)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                            .build())
+                    .build();
+        } else {
+            mSoundPool = new SoundPool(MAX_STREAMS, AudioManager.STREAM_SYSTEM, 0);
+        }
+        mSoundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+            @Override
+            public void onLoadComplete(final SoundPool soundPool, final int sampleId,
+                    final int status) {
+                onSampleLoaded(sampleId, status);
+            }
+        });
+    }
+
+    /**
+     * Create the sound pool and decode the samples on the background executor.
+     * @return the new pool, or null if preloaded sounds are disabled for this device.
+     */
+    public static KeypressSoundPool create(final Context context) {
+        if (!context.getResources().getBoolean(R.bool.config_use_preloaded_keypress_sounds)) {
+            return null;
+        }
+        final KeypressSoundPool pool = new KeypressSoundPool();
+        final Context appContext = context.getApplicationContext();
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                pool.loadSamples(appContext);
+            }
+        });
+        return pool;
+    }
+
+    private void loadSamples(final Context context) {
+        synchronized (mLock) {
+            if (mIsReleased) {
+                return;
+            }
+            mIsLoading = true;
+        }
+        boolean isReleased = false;
+        for (int i = 0; i < SAMPLE_RESOURCES.length && !isReleased; i++) {
+            final int sampleId = mSoundPool.load(context, SAMPLE_RESOURCES[i], 1 /* priority */);
+            synchronized (mLock) {
+                mSampleIds[i] = sampleId;
+                // The completion is delivered on the UI thread, and can come before this.
+                if (mEarlyLoadedIds.get(sampleId)) {
+                    mEarlyLoadedIds.delete(sampleId);
+                    mIsSampleLoaded[i] = true;
+                }
+                isReleased = mIsReleased;
+            }
+        }
+        synchronized (mLock) {
+            mIsLoading = false;
+            isReleased = mIsReleased;
+        }
+        if (isReleased) {
+            // Released while a sample was loading, so that was left to here.
+            mSoundPool.release();
+        }
+    }
+
+    private void onSampleLoaded(final int sampleId, final int status) {
+        if (status != 0) {
+            Log.w(TAG, "Failed to load keypress sound: status=" + status);
+            return;
+        }
+        synchronized (mLock) {
+            for (int i = 0; i < mSampleIds.length; i++) {
+                if (mSampleIds[i] == sampleId) {
+                    mIsSampleLoaded[i] = true;
+                    return;
+                }
+            }
+            mEarlyLoadedIds.put(sampleId, true);
+        }
+    }
+
+    private static int getSampleIndex(final int code) {
+        switch (code) {
+        case Constants.CODE_DELETE:
+            return SAMPLE_DELETE;
+        case Constants.CODE_ENTER:
+            return SAMPLE_RETURN;
+        case Constants.CODE_SPACE:
+            return SAMPLE_SPACEBAR;
+        default:
+            return SAMPLE_STANDARD;
+        }
+    }
+
+    /**
+     * Play the sample for the given key code.
+     * @return false if the sample isn't loaded yet, so the caller should fall back to the
+     *   system sound effect.
+     */
+    public boolean play(final int code, final float volume) {
+        final int index = getSampleIndex(code);
+        final int sampleId;
+        synchronized (mLock) {
+            if (mIsReleased || !mIsSampleLoaded[index]) {
+                return false;
+            }
+            sampleId = mSampleIds[index];
+        }
+        final float v = volume < 0 ? DEFAULT_VOLUME : volume;
+        mSoundPool.play(sampleId, v, v, 1 /* priority */, 0 /* loop */, 1.0f /* rate */);
+        return true;
+    }
+
+    /**
+     * Release the pool. If the samples are still being loaded, the loading task releases it
+     * when its current sample is done.
+     */
+    public void release() {
+        synchronized (mLock) {
+            if (mIsReleased) {
+                return;
+            }
+            mIsReleased = true;
+            if (mIsLoading) {
+                return;
+            }
+        }
+        mSoundPool.release();
+    }
+}
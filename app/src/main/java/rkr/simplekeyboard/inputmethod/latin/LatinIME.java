@@ -18,6 +18,7 @@ package rkr.simplekeyboard.inputmethod.latin;
 
 import android.app.AlertDialog;
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
@@ -27,7 +28,9 @@ import android.inputmethodservice.InputMethodService;
 import android.media.AudioManager;
 import android.os.Build;
 import android.os.Debug;
+import android.os.Looper;
 import android.os.Message;
+import android.os.MessageQueue;
 import android.text.InputType;
 import android.util.Log;
 import android.util.PrintWriterPrinter;
@@ -48,15 +51,23 @@ import rkr.simplekeyboard.inputmethod.compat.PreferenceManagerCompat;
 import rkr.simplekeyboard.inputmethod.compat.ViewOutlineProviderCompatUtils;
 import rkr.simplekeyboard.inputmethod.compat.ViewOutlineProviderCompatUtils.InsetsUpdater;
 import rkr.simplekeyboard.inputmethod.keyboard.KeyboardActionListener;
+import rkr.simplekeyboard.inputmethod.keyboard.KeyboardLayout;
 import rkr.simplekeyboard.inputmethod.keyboard.KeyboardLoader;
 import rkr.simplekeyboard.inputmethod.keyboard.MainKeyboardView;
+import rkr.simplekeyboard.inputmethod.keyboard.PointerTracker;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.CharacterPredictor;
+import rkr.simplekeyboard.inputmethod.keyboard.internal.CompletionLookup;
 import rkr.simplekeyboard.inputmethod.latin.common.Constants;
 import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
 import rkr.simplekeyboard.inputmethod.latin.settings.Settings;
 import rkr.simplekeyboard.inputmethod.latin.settings.SettingsValues;
 import rkr.simplekeyboard.inputmethod.latin.utils.ApplicationUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.ExecutorUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.LeakGuardHandlerWrapper;
+import rkr.simplekeyboard.inputmethod.latin.utils.MemoryTrimmer;
 import rkr.simplekeyboard.inputmethod.latin.utils.ResourceUtils;
+import rkr.simplekeyboard.inputmethod.latin.utils.StartupTrace;
+import rkr.simplekeyboard.inputmethod.latin.utils.SubtypeLocaleUtils;
 import rkr.simplekeyboard.inputmethod.latin.utils.ViewLayoutUtils;
 
 /**
@@ -67,14 +78,19 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     private static final boolean TRACE = false;
 
     private static final int EXTENDED_TOUCHABLE_REGION_HEIGHT = 100;
-    private static final int PERIOD_FOR_AUDIO_AND_HAPTIC_FEEDBACK_IN_KEY_REPEAT = 2;
     private static final int PENDING_IMS_CALLBACK_DURATION_MILLIS = 800;
+    private static final long DICTIONARY_LOAD_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(2);
     static final long DELAY_DEALLOCATE_MEMORY_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
     final Settings mSettings;
+    private final InputAttributesCache mInputAttributesCache = new InputAttributesCache();
     private int mOriginalNavBarColor = 0;
     private int mOriginalNavBarFlags = 0;
     public final RichInputConnection mConnection = new RichInputConnection(this);
+    private final SentenceTracker mSentenceTracker = new SentenceTracker();
+    // Null until the background open posted by UIHandler#postReopenDictionaries has finished.
+    private volatile Dictionary mDictionary;
+    private boolean mIsOpeningDictionary;
 
     private View mInputView;
     private InsetsUpdater mInsetsUpdater;
@@ -82,6 +98,8 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     final KeyboardLoader mKeyboardSwitcher;
 
     private AlertDialog mOptionsDialog;
+    private boolean mHasFinishedDeferredCreate;
+    private boolean mIsDestroyed;
 
     public final UIHandler mHandler = new UIHandler(this);
 
@@ -112,6 +130,9 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             case MSG_RESET_CACHES:
             case MSG_SWITCH_LANGUAGE_AUTOMATICALLY:
                 break;
+            case MSG_REOPEN_DICTIONARIES:
+                latinIme.reopenDictionary();
+                break;
             case MSG_WAIT_FOR_DICTIONARY_LOAD:
                 Log.i(TAG, "Timeout waiting for dictionary load");
                 break;
@@ -125,6 +146,15 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             sendMessage(obtainMessage(MSG_REOPEN_DICTIONARIES));
         }
 
+        public void postWaitForDictionaryLoad() {
+            sendMessageDelayed(obtainMessage(MSG_WAIT_FOR_DICTIONARY_LOAD),
+                    DICTIONARY_LOAD_TIMEOUT_MILLIS);
+        }
+
+        public void cancelWaitForDictionaryLoad() {
+            removeMessages(MSG_WAIT_FOR_DICTIONARY_LOAD);
+        }
+
         public void postResetCaches(final boolean tryResumeSuggestions, final int remainingTries) {
             removeMessages(MSG_RESET_CACHES);
             sendMessage(obtainMessage(MSG_RESET_CACHES, tryResumeSuggestions ? 1 : 0,
@@ -247,34 +277,74 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
     @Override
     public void onCreate() {
+        StartupTrace.markCreate();
+        // Only what the first frame needs runs here: the settings snapshot and the keyboard
+        // loader. Everything else is deferred until the UI thread is idle.
         Settings.init(this);
-        DebugFlags.init(PreferenceManagerCompat.getDeviceSharedPreferences(this));
         KeyboardLoader.init(this);
-        AudioAndHapticFeedbackManager.init(this);
+        SubtypeLocaleUtils.init(this);
         super.onCreate();
 
         mHandler.onCreate();
 
         loadSettings();
 
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                onCreateDeferred();
+                return false;
+            }
+        });
+    }
+
+    /**
+     * Second stage of {@link #onCreate()}, run once the UI thread has nothing else to do.
+     */
+    void onCreateDeferred() {
+        if (mIsDestroyed || mHasFinishedDeferredCreate) {
+            return;
+        }
+        mHasFinishedDeferredCreate = true;
+        DebugFlags.init(PreferenceManagerCompat.getDeviceSharedPreferences(this));
+        AudioAndHapticFeedbackManager.init(this);
+        // The vibrator wasn't known when the first settings were read.
+        mSettings.refreshPreference(Settings.PREF_VIBRATE_ON);
+        // Nor were the audio service and the vibrator, which the feedback flag depends on.
+        final SettingsValues settingsValues = mSettings.getCurrent();
+        if (settingsValues != null) {
+            AudioAndHapticFeedbackManager.getInstance().onSettingsChanged(settingsValues);
+        }
+
         // Register to receive ringer mode change.
         final IntentFilter filter = new IntentFilter();
         filter.addAction(AudioManager.RINGER_MODE_CHANGED_ACTION);
         registerReceiver(mRingerModeChangeReceiver, filter);
+
+        mHandler.postReopenDictionaries();
     }
 
     private void loadSettings() {
         final EditorInfo editorInfo = getCurrentInputEditorInfo();
-        final InputAttributes inputAttributes = new InputAttributes(editorInfo, isFullscreenMode());
+        final InputAttributes inputAttributes =
+                mInputAttributesCache.get(editorInfo, isFullscreenMode());
         mSettings.loadSettings(this, null, inputAttributes);
-        final SettingsValues currentSettingsValues = mSettings.getCurrent();
-        AudioAndHapticFeedbackManager.getInstance().onSettingsChanged(currentSettingsValues);
+    }
+
+    private void updateInputAttributes(final EditorInfo editorInfo) {
+        final InputAttributes inputAttributes =
+                mInputAttributesCache.get(editorInfo, isFullscreenMode());
+        mSettings.updateInputAttributes(inputAttributes);
     }
 
     @Override
     public void onDestroy() {
+        mIsDestroyed = true;
         mSettings.onDestroy();
-        unregisterReceiver(mRingerModeChangeReceiver);
+        if (mHasFinishedDeferredCreate) {
+            unregisterReceiver(mRingerModeChangeReceiver);
+            AudioAndHapticFeedbackManager.getInstance().release();
+        }
         super.onDestroy();
     }
 
@@ -286,9 +356,10 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     @Override
     public void onConfigurationChanged(final Configuration conf) {
         SettingsValues settingsValues = mSettings.getCurrent();
-        if (settingsValues.mHasHardwareKeyboard != Settings.readHasHardwareKeyboard(conf)) {
-            // If the state of having a hardware keyboard changed, then we want to reload the
-            // settings to adjust for that.
+        if (settingsValues.mHasHardwareKeyboard != Settings.readHasHardwareKeyboard(conf)
+                || !settingsValues.hasSameLocale(conf)) {
+            // If the state of having a hardware keyboard or the system locale changed, then we
+            // want to reload the settings to adjust for that.
             loadSettings();
         }
 
@@ -355,6 +426,8 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         // also wouldn't be consuming gesture data.
         final KeyboardLoader switcher = mKeyboardSwitcher;
         switcher.updateKeyboardTheme(getResources().getConfiguration().uiMode);
+        // Bring back anything a memory trim dropped while we were hidden.
+        MemoryTrimmer.onStartInputView();
 
         final MainKeyboardView mainKeyboardView = switcher.getMainKeyboardView();
         // If we are starting input in a different text field from before, we'll have to reload
@@ -425,10 +498,23 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             needToCallLoadKeyboardLater = false;
         }
 
-        if (isDifferentTextField ||
-                !currentSettingsValues.hasSameOrientation(getResources().getConfiguration())) {
+        final Configuration conf = getResources().getConfiguration();
+        if (!currentSettingsValues.hasSameOrientation(conf)
+                || !currentSettingsValues.hasSameLocale(conf)) {
             loadSettings();
-        }
+        } else if (isDifferentTextField) {
+            // Preferences are kept up to date by Settings, only the input field changed.
+            updateInputAttributes(editorInfo);
+        }
+        // Completions were for the word in the last field, or before the last cursor move.
+        CompletionLookup.clear();
+        // Nothing typed into a password field is learnt or auto-capitalised.
+        final boolean isPasswordField = mSettings.getCurrent().mInputAttributes.mIsPasswordField;
+        CharacterPredictor.startInput(mConnection.getTextBeforeCursor(2, 0), !isPasswordField);
+        mSentenceTracker.startInput(editorInfo.inputType,
+                mSettings.getCurrent().mAutoCap && !isPasswordField,
+                mConnection.getTextBeforeCursor(SentenceTracker.SCAN_LENGTH, 0));
+        updateAutoCaps();
         if (isDifferentTextField || needToCallLoadKeyboardLater) {
             mainKeyboardView.closing();
             switcher.loadKeyboard();
@@ -467,10 +553,19 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
     void onFinishInputViewInternal(final boolean finishingInput) {
         super.onFinishInputView(finishingInput);
+        CharacterPredictor.save();
     }
 
     protected void deallocateMemory() {
         mKeyboardSwitcher.deallocateMemory();
+        // The keyboard has been hidden for a while: treat it as if the UI were gone.
+        MemoryTrimmer.trimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        super.onTrimMemory(level);
+        MemoryTrimmer.trimMemory(level);
     }
 
     @Override
@@ -484,6 +579,37 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
                     + ", nss=" + newSelStart + ", nse=" + newSelEnd
                     + ", cs=" + composingSpanStart + ", ce=" + composingSpanEnd);
         }
+        if (!isInputViewShown()
+                || mConnection.isBelatedExpectedUpdate(oldSelStart, newSelStart, oldSelEnd,
+                        newSelEnd)) {
+            return;
+        }
+        // The cursor was moved by something other than the keyboard, like a tap in the editor
+        // or the arrow keys, so the text before it is read again. Keys alone never need this.
+        mConnection.resetCachesUponCursorMoveAndReturnSuccess(newSelStart, newSelEnd);
+        mSentenceTracker.rescan(mConnection.getTextBeforeCursor(SentenceTracker.SCAN_LENGTH, 0));
+        CharacterPredictor.setContext(mConnection.getTextBeforeCursor(2, 0));
+        updateAutoCaps();
+        // The completions shown are of the word before the old cursor.
+        final MainKeyboardView mainKeyboardView = mKeyboardSwitcher.getMainKeyboardView();
+        if (mainKeyboardView != null) {
+            CompletionLookup.update(this, mainKeyboardView);
+        } else {
+            CompletionLookup.clear();
+        }
+    }
+
+    /**
+     * Switch single-cap mode on or off for where the cursor now is, if auto-capitalisation is
+     * on and the field asks for it.
+     */
+    private void updateAutoCaps() {
+        if (KeyboardLayout.SetAutoCaps(mSentenceTracker.isCapsNeeded())) {
+            final MainKeyboardView mainKeyboardView = mKeyboardSwitcher.getMainKeyboardView();
+            if (mainKeyboardView != null) {
+                mainKeyboardView.invalidateAll();
+            }
+        }
     }
 
     @Override
@@ -588,7 +714,25 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
 
     @Override
     public void SendKeyEvent(KeyEvent keyEvent){
+        // Read before the key is sent, which collapses the expected selection.
+        final boolean hadSelection = mConnection.hasSelection();
         mConnection.sendKeyEvent(keyEvent);
+        if (keyEvent.getAction() != KeyEvent.ACTION_DOWN) {
+            return;
+        }
+        // Other keys move the cursor, which onUpdateSelection picks up.
+        if (keyEvent.getKeyCode() == KeyEvent.KEYCODE_ENTER) {
+            mSentenceTracker.onTextCommitted("\n");
+            updateAutoCaps();
+        } else if (keyEvent.getKeyCode() == KeyEvent.KEYCODE_DEL) {
+            // A selection is deleted as a whole, not one character, so the state before the
+            // cursor is worked out again rather than popped.
+            if (hadSelection || !mSentenceTracker.onDelete()) {
+                mSentenceTracker.rescan(
+                        mConnection.getTextBeforeCursor(SentenceTracker.SCAN_LENGTH, 0));
+            }
+            updateAutoCaps();
+        }
     }
 
     private boolean isShowingOptionDialog() {
@@ -601,6 +745,87 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         mConnection.beginBatchEdit();
         mConnection.commitText(rawText, 1);
         mConnection.endBatchEdit();
+        mSentenceTracker.onTextCommitted(rawText);
+        updateAutoCaps();
+    }
+
+    /**
+     * Open the completions dictionary on the background executor, if it isn't open yet. Mapping
+     * it costs next to nothing, but the asset lookup is still disk work.
+     */
+    void reopenDictionary() {
+        if (mDictionary != null || mIsOpeningDictionary) {
+            return;
+        }
+        mIsOpeningDictionary = true;
+        mHandler.postWaitForDictionaryLoad();
+        final Context context = getApplicationContext();
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Dictionary dictionary = Dictionary.open(context);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mDictionary = dictionary;
+                        mIsOpeningDictionary = false;
+                        mHandler.cancelWaitForDictionaryLoad();
+                    }
+                });
+            }
+        });
+    }
+
+    // Called from CompletionLookup through the KeyboardActionListener interface
+    @Override
+    public String getCompletionPrefix() {
+        if (mDictionary == null || !shouldShowCompletions()) {
+            return "";
+        }
+        return mConnection.getWordBeforeCursor();
+    }
+
+    // Not in password fields, nor in fields that ask for no suggestions, so what is typed there
+    // is never read back and shown.
+    private boolean shouldShowCompletions() {
+        final SettingsValues settingsValues = mSettings.getCurrent();
+        return settingsValues != null && settingsValues.mInputAttributes.mShouldShowSuggestions;
+    }
+
+    // Called from PointerTracker through the KeyboardActionListener interface
+    @Override
+    public CharSequence getTextBeforeCursor(final int length) {
+        return mConnection.getTextBeforeCursor(length, 0);
+    }
+
+    // Called from CompletionLookup, on the background executor
+    @Override
+    public String[] getCompletions(final String prefix, final int limit) {
+        final Dictionary dictionary = mDictionary;
+        if (dictionary == null) {
+            return new String[0];
+        }
+        return dictionary.getCompletions(prefix, limit);
+    }
+
+    // Called from PointerTracker through the KeyboardActionListener interface
+    @Override
+    public void onCompletionInput(final String word) {
+        if (!shouldShowCompletions()) {
+            return;
+        }
+        // Only the rest of the word is sent, so the typed part stays as it is in the editor.
+        final String prefix = mConnection.getWordBeforeCursor();
+        if (prefix.isEmpty() || !word.startsWith(prefix)) {
+            // Not a completion of the word being typed, shown before the cursor moved.
+            return;
+        }
+        final String rest = word.substring(prefix.length()) + " ";
+        mConnection.beginBatchEdit();
+        mConnection.commitText(rest, 1);
+        mConnection.endBatchEdit();
+        mSentenceTracker.onTextCommitted(rest);
+        updateAutoCaps();
     }
 
     private void loadKeyboard() {
@@ -617,24 +842,15 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         }
     }
 
-    // TODO: re-enable this
-    public void hapticAndAudioFeedback(final int code, final int repeatCount) {
-        final MainKeyboardView keyboardView = mKeyboardSwitcher.getMainKeyboardView();
-        if (repeatCount > 0) {
-            if (code == Constants.CODE_DELETE && !mConnection.canDeleteCharacters()) {
-                // No need to feedback when repeat delete key will have no effect.
-                return;
-            }
-            if (repeatCount % PERIOD_FOR_AUDIO_AND_HAPTIC_FEEDBACK_IN_KEY_REPEAT == 0) {
-                return;
-            }
-        }
-        final AudioAndHapticFeedbackManager feedbackManager =
-                AudioAndHapticFeedbackManager.getInstance();
-        if (repeatCount == 0) {
-            feedbackManager.performHapticFeedback(keyboardView);
-        }
-        feedbackManager.performAudioFeedback(code);
+    @Override
+    public void onPressKey() {
+        AudioAndHapticFeedbackManager.getInstance().performHapticFeedback(
+                mKeyboardSwitcher.getMainKeyboardView());
+    }
+
+    @Override
+    public void onReleaseKey(final int primaryCode) {
+        AudioAndHapticFeedbackManager.getInstance().performAudioFeedback(primaryCode);
     }
 
     // receive ringer mode change.
@@ -663,6 +879,16 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         p.println("LatinIME state :");
         p.println("  VersionCode = " + ApplicationUtils.getVersionCode(this));
         p.println("  VersionName = " + ApplicationUtils.getVersionName(this));
+        p.println("  StartupToFirstDraw = " + StartupTrace.getFirstDrawDuration() + " ms");
+        p.println("  TouchNoiseCount = " + PointerTracker.getTouchNoiseCount());
+        p.println("  RetainedCacheBytes = " + MemoryTrimmer.getRetainedBytes());
+        final SettingsValues settingsValues = mSettings.getCurrent();
+        if (settingsValues != null) {
+            p.println("  SettingsVersion = " + settingsValues.mVersion);
+        }
+        p.println("  InputAttributesCache : size=" + mInputAttributesCache.size()
+                + " hits=" + mInputAttributesCache.getHitCount()
+                + " misses=" + mInputAttributesCache.getMissCount());
     }
 
     private void setNavigationBarColor() {
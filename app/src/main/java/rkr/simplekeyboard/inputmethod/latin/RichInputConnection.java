@@ -303,6 +303,27 @@ public final class RichInputConnection {
                 n, flags);
     }
 
+    /**
+     * Returns the word being typed: the letters and apostrophes just before the cursor, from the
+     * cache when it has them. Empty if the cursor isn't just after a letter.
+     */
+    public String getWordBeforeCursor() {
+        final CharSequence before = getTextBeforeCursor(Dictionary.MAX_WORD_LENGTH, 0);
+        if (before == null) {
+            return "";
+        }
+        int start = before.length();
+        while (start > 0 && (Character.isLetter(before.charAt(start - 1))
+                || before.charAt(start - 1) == '\'')) {
+            start--;
+        }
+        // Quotes around a word aren't part of it.
+        while (start < before.length() && before.charAt(start) == '\'') {
+            start++;
+        }
+        return before.subSequence(start, before.length()).toString();
+    }
+
     private CharSequence getTextBeforeCursorAndDetectLaggyConnection(
             final int operation, final long timeout, final int n, final int flags) {
         mIC = mParent.getCurrentInputConnection();
@@ -342,6 +363,11 @@ public final class RichInputConnection {
                 }
                 break;
             case KeyEvent.KEYCODE_DEL:
+                if (hasSelection()) {
+                    // Only the selection goes, and the text before it stays as it was.
+                    mExpectedSelEnd = mExpectedSelStart;
+                    break;
+                }
                 if (0 == mComposingText.length()) {
                     if (mCommittedTextBeforeComposingText.length() > 0) {
                         mCommittedTextBeforeComposingText.delete(
@@ -381,6 +407,29 @@ public final class RichInputConnection {
         }
     }
 
+    /**
+     * Returns true if a selection update is one the keyboard caused, maybe arriving late because
+     * the editor is behind on updates; false if something else, like a tap in the editor, moved
+     * the cursor.
+     */
+    public boolean isBelatedExpectedUpdate(final int oldSelStart, final int newSelStart,
+            final int oldSelEnd, final int newSelEnd) {
+        // Where we expect the selection to end up.
+        if (mExpectedSelStart == newSelStart && mExpectedSelEnd == newSelEnd) return true;
+        // Moved away from where we expected it to be: something else moved it.
+        if (mExpectedSelStart == oldSelStart && mExpectedSelEnd == oldSelEnd
+                && (oldSelStart != newSelStart || oldSelEnd != newSelEnd)) return false;
+        // The editor is catching up: a cursor that has moved toward where we expect it.
+        return (newSelStart == newSelEnd)
+                && (newSelStart - oldSelStart) * (mExpectedSelStart - newSelStart) >= 0
+                && (newSelEnd - oldSelEnd) * (mExpectedSelEnd - newSelEnd) >= 0;
+    }
+
+    /** Whether a non-empty selection is expected, which a backspace deletes as a whole. */
+    public boolean hasSelection() {
+        return mExpectedSelEnd != mExpectedSelStart;
+    }
+
     public boolean hasCursorPosition() {
         return mExpectedSelStart != INVALID_CURSOR_POSITION && mExpectedSelEnd != INVALID_CURSOR_POSITION;
     }
@@ -0,0 +1,139 @@
+package rkr.simplekeyboard.inputmethod.latin;
+
+import android.text.InputType;
+
+/**
+ * Knows whether the next letter typed should be a capital, for auto-capitalisation.
+ *
+ * The state of the text just before the cursor (start of a line, inside a word, after the end
+ * of a sentence...) is kept as a stack with one entry per character, updated as text is
+ * committed and deleted, so a key costs a step of a small state machine and never a look at the
+ * text. The text before the cursor is only scanned again when the cursor has been moved by
+ * something other than the keyboard, or when more is deleted than the stack remembers.
+ *
+ * Only used on the UI thread.
+ */
+public final class SentenceTracker {
+    /** How much of the text before the cursor a scan reads. */
+    public static final int SCAN_LENGTH = 256;
+    // The most characters remembered; deleting past them scans the text again.
+    private static final int HISTORY = 1024;
+
+    // What the cursor is just after
+    private static final byte START = 0; // the start of the field or of a line
+    private static final byte WORD = 1; // a letter, or anything but the below
+    private static final byte SPACE = 2; // a space after a word
+    private static final byte SENTENCE_END = 3; // a full stop, or quotes closed after one
+    private static final byte SENTENCE_SPACE = 4; // a space after the end of a sentence
+
+    // What the field asks to be capitalised, from its input type
+    private static final int CAPS_NONE = 0;
+    private static final int CAPS_SENTENCES = 1;
+    private static final int CAPS_WORDS = 2;
+    private static final int CAPS_CHARACTERS = 3;
+
+    // A ring of states, the top one being the state at the cursor.
+    private final byte[] mStates = new byte[HISTORY];
+    private int mTop;
+    // States in the ring that are known; the bottom one is never deleted past.
+    private int mDepth;
+    private int mCapsMode = CAPS_NONE;
+
+    /**
+     * Start on a new field.
+     * @param inputType the field's input type
+     * @param isEnabled false to never capitalise, as when the setting is off or in a password field
+     * @param before the text before the cursor, or null if it can't be read
+     */
+    public void startInput(final int inputType, final boolean isEnabled,
+            final CharSequence before) {
+        mCapsMode = isEnabled ? getCapsMode(inputType) : CAPS_NONE;
+        rescan(before);
+    }
+
+    private static int getCapsMode(final int inputType) {
+        if ((inputType & InputType.TYPE_MASK_CLASS) != InputType.TYPE_CLASS_TEXT) {
+            return CAPS_NONE;
+        }
+        if ((inputType & InputType.TYPE_TEXT_FLAG_CAP_CHARACTERS) != 0) return CAPS_CHARACTERS;
+        if ((inputType & InputType.TYPE_TEXT_FLAG_CAP_WORDS) != 0) return CAPS_WORDS;
+        if ((inputType & InputType.TYPE_TEXT_FLAG_CAP_SENTENCES) != 0) return CAPS_SENTENCES;
+        return CAPS_NONE;
+    }
+
+    /**
+     * Forget the state and work it out again from the text before the cursor, after the
+     * cursor has moved.
+     * @param before the text before the cursor, as read with {@link #SCAN_LENGTH}, or null if it
+     *     can't be read
+     */
+    public void rescan(final CharSequence before) {
+        mTop = 0;
+        mDepth = 1;
+        if (before == null) {
+            // Don't capitalise when we can't tell.
+            mStates[0] = WORD;
+            return;
+        }
+        // Less than was asked for means the text reaches back to the start of the field.
+        mStates[0] = before.length() < SCAN_LENGTH ? START : WORD;
+        onTextCommitted(before);
+    }
+
+    /** Move the state on past text committed at the cursor. */
+    public void onTextCommitted(final CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            final byte state = step(mStates[mTop], text.charAt(i));
+            mTop = (mTop + 1) % HISTORY;
+            mStates[mTop] = state;
+            mDepth = Math.min(mDepth + 1, HISTORY);
+        }
+    }
+
+    /**
+     * Move the state back past a character deleted before the cursor.
+     * @return false if the state before it isn't remembered, and the text needs scanning again
+     */
+    public boolean onDelete() {
+        if (mDepth <= 1) {
+            return false;
+        }
+        mTop = (mTop + HISTORY - 1) % HISTORY;
+        mDepth--;
+        return true;
+    }
+
+    private static byte step(final byte state, final char c) {
+        if (c == '\n') return START;
+        if (Character.isWhitespace(c)) {
+            if (state == SENTENCE_END || state == SENTENCE_SPACE) return SENTENCE_SPACE;
+            return state == START ? START : SPACE;
+        }
+        switch (c) {
+            case '.': case '!': case '?': case '…':
+                return SENTENCE_END;
+            case '"': case '\'': case ')': case ']': case '”': case '’': case '»':
+            case '(': case '[': case '“': case '‘': case '«': case '¿': case '¡':
+                // Quotes and brackets don't change what the next letter starts: a sentence
+                // still ends after a closing one, and starts after an opening one.
+                return state;
+            default:
+                return WORD;
+        }
+    }
+
+    /** Whether the next letter should be a capital. */
+    public boolean isCapsNeeded() {
+        final byte state = mStates[mTop];
+        switch (mCapsMode) {
+            case CAPS_CHARACTERS:
+                return true;
+            case CAPS_WORDS:
+                return state != WORD && state != SENTENCE_END;
+            case CAPS_SENTENCES:
+                return state == START || state == SENTENCE_SPACE;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package rkr.simplekeyboard.inputmethod.latin.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * The search of a completions dictionary compiled by the layouttools DictionaryCompiler: a trie
+ * whose nodes know the highest frequency under them, so a best-first walk from the prefix finds
+ * the top completions without looking at the rest.
+ *
+ * Only uses the JDK, so the layouttools DictionaryBenchmark times this same code. The buffer is
+ * only read, so a trie can be searched from any thread.
+ */
+public final class DictionaryTrie {
+    /** The longest word looked for; the list has nothing longer. */
+    public static final int MAX_WORD_LENGTH = 32;
+
+    private final ByteBuffer mTrie;
+    private final int mRoot;
+
+    /**
+     * @param trie the compiled dictionary, header included, with its format already checked
+     */
+    public DictionaryTrie(final ByteBuffer trie) {
+        mTrie = trie;
+        mRoot = trie.getInt(12);
+    }
+
+    // A place to look in the best-first walk: a node, or a word found at a node.
+    private static final class Candidate implements Comparable<Candidate> {
+        final int mScore;
+        final int mOrder;
+        final int mNode; // or -1 for a word
+        final String mText;
+
+        Candidate(final int score, final int order, final int node, final String text) {
+            mScore = score;
+            mOrder = order;
+            mNode = node;
+            mText = text;
+        }
+
+        @Override
+        public int compareTo(final Candidate other) {
+            return mScore != other.mScore ? other.mScore - mScore : mOrder - other.mOrder;
+        }
+    }
+
+    /**
+     * The most frequent words that start with the prefix and are longer than it, at most
+     * {@code limit} of them, most frequent first. They start with the prefix as it was typed,
+     * and the rest is in capitals if the prefix is more than one letter and all capitals.
+     */
+    public String[] getCompletions(final String prefix, final int limit) {
+        if (prefix.isEmpty() || prefix.length() >= MAX_WORD_LENGTH || limit <= 0) {
+            return new String[0];
+        }
+        final Locale locale = Locale.getDefault();
+        final String[] completions = complete(prefix.toLowerCase(locale), limit);
+        final boolean isAllCaps = prefix.length() > 1 && prefix.equals(prefix.toUpperCase(locale))
+                && !prefix.equals(prefix.toLowerCase(locale));
+        for (int i = 0; i < completions.length; i++) {
+            final String rest = completions[i].substring(prefix.length());
+            completions[i] = prefix + (isAllCaps ? rest.toUpperCase(locale) : rest);
+        }
+        return completions;
+    }
+
+    private String[] complete(final String prefix, final int limit) {
+        final ByteBuffer trie = mTrie;
+        int node = mRoot;
+        for (int i = 0; i < prefix.length() && node >= 0; i++) {
+            node = findChild(trie, node, prefix.charAt(i));
+        }
+        if (node < 0) {
+            return new String[0];
+        }
+        final String[] results = new String[limit];
+        int count = 0;
+        int order = 0;
+        final PriorityQueue<Candidate> queue = new PriorityQueue<>();
+        queue.add(new Candidate(trie.get(node + 1) & 0xFF, order++, node, prefix));
+        while (count < limit && !queue.isEmpty()) {
+            final Candidate candidate = queue.poll();
+            if (candidate.mNode < 0) {
+                results[count++] = candidate.mText;
+                continue;
+            }
+            final int at = candidate.mNode;
+            final int frequency = trie.get(at) & 0xFF;
+            if (frequency > 0 && candidate.mText.length() > prefix.length()) {
+                queue.add(new Candidate(frequency, order++, -1, candidate.mText));
+            }
+            final int children = trie.get(at + 2) & 0xFF;
+            for (int c = 0; c < children; c++) {
+                final int child = getChild(trie, at, c);
+                queue.add(new Candidate(trie.get(child + 1) & 0xFF, order++, child,
+                        candidate.mText + getLetter(trie, at, c)));
+            }
+        }
+        return Arrays.copyOf(results, count);
+    }
+
+    private static int findChild(final ByteBuffer trie, final int node, final char letter) {
+        final int children = trie.get(node + 2) & 0xFF;
+        for (int c = 0; c < children; c++) {
+            if (getLetter(trie, node, c) == letter) {
+                return getChild(trie, node, c);
+            }
+        }
+        return -1;
+    }
+
+    private static char getLetter(final ByteBuffer trie, final int node, final int child) {
+        return trie.getChar(node + 3 + child * 5);
+    }
+
+    private static int getChild(final ByteBuffer trie, final int node, final int child) {
+        final int at = node + 3 + child * 5 + 2;
+        return ((trie.get(at) & 0xFF) << 16) | ((trie.get(at + 1) & 0xFF) << 8)
+                | (trie.get(at + 2) & 0xFF);
+    }
+}
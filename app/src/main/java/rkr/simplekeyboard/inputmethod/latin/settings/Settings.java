@@ -24,7 +24,7 @@ import android.graphics.Color;
 import android.util.Log;
 
 import java.util.Locale;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
 
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.compat.PreferenceManagerCompat;
@@ -62,11 +62,11 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
     private static final float UNDEFINED_PREFERENCE_VALUE_FLOAT = -1.0f;
     private static final int UNDEFINED_PREFERENCE_VALUE_INT = -1;
 
-    private Context mContext;
+    private volatile Context mContext;
     private Resources mRes;
     private SharedPreferences mPrefs;
-    private SettingsValues mSettingsValues;
-    private final ReentrantLock mSettingsValuesLock = new ReentrantLock();
+    // Immutable snapshot, replaced as a whole on every change so readers never need a lock.
+    private final AtomicReference<SettingsValues> mSettingsValues = new AtomicReference<>();
 
     private static final Settings sInstance = new Settings();
 
@@ -87,6 +87,9 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
         mRes = context.getResources();
         mPrefs = PreferenceManagerCompat.getDeviceSharedPreferences(context);
         mPrefs.registerOnSharedPreferenceChangeListener(this);
+        // Resolve the device specific defaults off the UI thread before they are first needed.
+        ResourceUtils.prefetchDeviceOverrideValues(mRes,
+                R.array.keypress_volumes, R.array.keypress_vibration_durations);
     }
 
     public void onDestroy() {
@@ -95,41 +98,87 @@ public final class Settings implements SharedPreferences.OnSharedPreferenceChang
 
     @Override
     public void onSharedPreferenceChanged(final SharedPreferences prefs, final String key) {
-        mSettingsValuesLock.lock();
-        try {
-            if (mSettingsValues == null) {
+        // This may be called on a different thread from the readers, so each update is computed
+        // from a snapshot and only published if no other update happened in between.
+        while (true) {
+            final SettingsValues current = mSettingsValues.get();
+            if (current == null) {
                 // TODO: Introduce a static function to register this class and ensure that
                 // loadSettings must be called before "onSharedPreferenceChanged" is called.
                 Log.w(TAG, "onSharedPreferenceChanged called before loadSettings.");
                 return;
             }
-            loadSettings(mContext, mSettingsValues.mLocale, mSettingsValues.mInputAttributes);
-        } finally {
-            mSettingsValuesLock.unlock();
+            if (key == null) {
+                // All preferences have been cleared, there is nothing to copy from.
+                loadSettings(mContext, current.mLocale, current.mInputAttributes);
+                return;
+            }
+            // Only re-read the fields that depend on the changed key.
+            final SettingsValues updated = current.withChangedPreference(prefs, mRes, key);
+            if (updated == current) {
+                return;
+            }
+            if (mSettingsValues.compareAndSet(current, updated)) {
+                onPublished();
+                return;
+            }
         }
     }
 
     public void loadSettings(final Context context, final Locale locale,
             final InputAttributes inputAttributes) {
-        mSettingsValuesLock.lock();
         mContext = context;
-        try {
-            final SharedPreferences prefs = mPrefs;
-            final RunInLocale<SettingsValues> job = new RunInLocale<SettingsValues>() {
-                @Override
-                protected SettingsValues job(final Resources res) {
-                    return new SettingsValues(prefs, res, inputAttributes);
-                }
-            };
-            mSettingsValues = job.runInLocale(mRes, locale);
-        } finally {
-            mSettingsValuesLock.unlock();
+        final SharedPreferences prefs = mPrefs;
+        final RunInLocale<SettingsValues> job = new RunInLocale<SettingsValues>() {
+            @Override
+            protected SettingsValues job(final Resources res) {
+                return new SettingsValues(prefs, res, inputAttributes);
+            }
+        };
+        // Built once, outside of any retry. Everything is read from the preferences as they are
+        // now, so it replaces whatever snapshot is current, preference changes included.
+        mSettingsValues.set(job.runInLocale(mRes, locale));
+        onPublished();
+    }
+
+    // Keep what is precomputed from the settings for the touch path up to date. The latest
+    // snapshot is passed on, in case another was published since this one.
+    private void onPublished() {
+        AudioAndHapticFeedbackManager.getInstance().onSettingsChanged(mSettingsValues.get());
+    }
+
+    /**
+     * Switch the current settings to a new input field. The preference and configuration derived
+     * values are kept, so this doesn't touch the preferences or the resources.
+     */
+    public void updateInputAttributes(final InputAttributes inputAttributes) {
+        while (true) {
+            final SettingsValues current = mSettingsValues.get();
+            if (current == null) {
+                // Nothing loaded to switch yet, so load it all for this field.
+                Log.w(TAG, "updateInputAttributes called before loadSettings.");
+                loadSettings(mContext, null, inputAttributes);
+                return;
+            }
+            final SettingsValues updated = current.withInputAttributes(inputAttributes);
+            if (mSettingsValues.compareAndSet(current, updated)) {
+                onPublished();
+                return;
+            }
         }
     }
 
+    /**
+     * Re-read a single preference, for values that also depend on state which wasn't available
+     * when the settings were loaded (e.g. the vibrator service).
+     */
+    public void refreshPreference(final String key) {
+        onSharedPreferenceChanged(mPrefs, key);
+    }
+
     // TODO: Remove this method and add proxy method to SettingsValues.
     public SettingsValues getCurrent() {
-        return mSettingsValues;
+        return mSettingsValues.get();
     }
 
 
@@ -22,6 +22,7 @@ import android.content.res.Resources;
 import android.view.inputmethod.EditorInfo;
 
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.latin.InputAttributes;
@@ -34,6 +35,11 @@ import rkr.simplekeyboard.inputmethod.latin.InputAttributes;
 public class SettingsValues {
     public static final float DEFAULT_SIZE_SCALE = 1.0f; // 100%
 
+    private static final AtomicInteger sNextVersion = new AtomicInteger();
+
+    // Increases every time a new snapshot is built, so readers can tell if theirs is stale.
+    public final int mVersion = sNextVersion.incrementAndGet();
+
     // From configuration:
     public final Locale mLocale;
     public final boolean mHasHardwareKeyboard;
@@ -92,6 +98,124 @@ public class SettingsValues {
         mUseMatchingNavbarColor = Settings.readUseMatchingNavbarColor(prefs);
     }
 
+    /**
+     * Copy the given settings, re-reading only the fields that depend on the changed preference.
+     * The configuration and input attribute derived fields are always carried over.
+     */
+    private SettingsValues(final SettingsValues previous, final SharedPreferences prefs,
+            final Resources res, final String key) {
+        mLocale = previous.mLocale;
+        mHasHardwareKeyboard = previous.mHasHardwareKeyboard;
+        mDisplayOrientation = previous.mDisplayOrientation;
+        mInputAttributes = previous.mInputAttributes;
+        mKeyPreviewPopupDismissDelay = previous.mKeyPreviewPopupDismissDelay;
+
+        mAutoCap = Settings.PREF_AUTO_CAP.equals(key)
+                ? prefs.getBoolean(Settings.PREF_AUTO_CAP, true) : previous.mAutoCap;
+        mVibrateOn = Settings.PREF_VIBRATE_ON.equals(key)
+                ? Settings.readVibrationEnabled(prefs, res) : previous.mVibrateOn;
+        mSoundOn = Settings.PREF_SOUND_ON.equals(key)
+                ? Settings.readKeypressSoundEnabled(prefs, res) : previous.mSoundOn;
+        mKeyPreviewPopupOn = Settings.PREF_POPUP_ON.equals(key)
+                ? Settings.readKeyPreviewPopupEnabled(prefs, res) : previous.mKeyPreviewPopupOn;
+        mShowsLanguageSwitchKey = Settings.PREF_HIDE_LANGUAGE_SWITCH_KEY.equals(key)
+                ? Settings.readShowsLanguageSwitchKey(prefs) : previous.mShowsLanguageSwitchKey;
+        mKeyLongpressTimeout = Settings.PREF_KEY_LONGPRESS_TIMEOUT.equals(key)
+                ? Settings.readKeyLongpressTimeout(prefs, res) : previous.mKeyLongpressTimeout;
+        mKeypressVibrationDuration = Settings.PREF_VIBRATION_DURATION_SETTINGS.equals(key)
+                ? Settings.readKeypressVibrationDuration(prefs, res)
+                : previous.mKeypressVibrationDuration;
+        mKeypressSoundVolume = Settings.PREF_KEYPRESS_SOUND_VOLUME.equals(key)
+                ? Settings.readKeypressSoundVolume(prefs, res) : previous.mKeypressSoundVolume;
+        mKeyboardHeightScale = Settings.PREF_KEYBOARD_HEIGHT.equals(key)
+                ? Settings.readKeyboardHeight(prefs, DEFAULT_SIZE_SCALE)
+                : previous.mKeyboardHeightScale;
+        mHideSpecialChars = Settings.PREF_HIDE_SPECIAL_CHARS.equals(key)
+                ? Settings.readHideSpecialChars(prefs) : previous.mHideSpecialChars;
+        mShowNumberRow = Settings.PREF_SHOW_NUMBER_ROW.equals(key)
+                ? Settings.readShowNumberRow(prefs) : previous.mShowNumberRow;
+        mSpaceSwipeEnabled = Settings.PREF_SPACE_SWIPE.equals(key)
+                ? Settings.readSpaceSwipeEnabled(prefs) : previous.mSpaceSwipeEnabled;
+        mDeleteSwipeEnabled = Settings.PREF_DELETE_SWIPE.equals(key)
+                ? Settings.readDeleteSwipeEnabled(prefs) : previous.mDeleteSwipeEnabled;
+        mUseMatchingNavbarColor = Settings.PREF_MATCHING_NAVBAR_COLOR.equals(key)
+                ? Settings.readUseMatchingNavbarColor(prefs) : previous.mUseMatchingNavbarColor;
+    }
+
+    /**
+     * Copy the given settings with new input attributes. Nothing is read from the preferences or
+     * the resources.
+     */
+    private SettingsValues(final SettingsValues previous, final InputAttributes inputAttributes) {
+        mLocale = previous.mLocale;
+        mHasHardwareKeyboard = previous.mHasHardwareKeyboard;
+        mDisplayOrientation = previous.mDisplayOrientation;
+        mInputAttributes = inputAttributes;
+        mKeyPreviewPopupDismissDelay = previous.mKeyPreviewPopupDismissDelay;
+
+        mAutoCap = previous.mAutoCap;
+        mVibrateOn = previous.mVibrateOn;
+        mSoundOn = previous.mSoundOn;
+        mKeyPreviewPopupOn = previous.mKeyPreviewPopupOn;
+        mShowsLanguageSwitchKey = previous.mShowsLanguageSwitchKey;
+        mKeyLongpressTimeout = previous.mKeyLongpressTimeout;
+        mKeypressVibrationDuration = previous.mKeypressVibrationDuration;
+        mKeypressSoundVolume = previous.mKeypressSoundVolume;
+        mKeyboardHeightScale = previous.mKeyboardHeightScale;
+        mHideSpecialChars = previous.mHideSpecialChars;
+        mShowNumberRow = previous.mShowNumberRow;
+        mSpaceSwipeEnabled = previous.mSpaceSwipeEnabled;
+        mDeleteSwipeEnabled = previous.mDeleteSwipeEnabled;
+        mUseMatchingNavbarColor = previous.mUseMatchingNavbarColor;
+    }
+
+    /**
+     * Returns true if the value of this preference key is held by {@link SettingsValues}. Any
+     * other key (custom input styles, keyboard colour) is read elsewhere, so a change to it
+     * doesn't need a new instance.
+     */
+    public static boolean isTrackedPreference(final String key) {
+        switch (key) {
+        case Settings.PREF_AUTO_CAP:
+        case Settings.PREF_VIBRATE_ON:
+        case Settings.PREF_SOUND_ON:
+        case Settings.PREF_POPUP_ON:
+        case Settings.PREF_HIDE_LANGUAGE_SWITCH_KEY:
+        case Settings.PREF_KEY_LONGPRESS_TIMEOUT:
+        case Settings.PREF_VIBRATION_DURATION_SETTINGS:
+        case Settings.PREF_KEYPRESS_SOUND_VOLUME:
+        case Settings.PREF_KEYBOARD_HEIGHT:
+        case Settings.PREF_HIDE_SPECIAL_CHARS:
+        case Settings.PREF_SHOW_NUMBER_ROW:
+        case Settings.PREF_SPACE_SWIPE:
+        case Settings.PREF_DELETE_SWIPE:
+        case Settings.PREF_MATCHING_NAVBAR_COLOR:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Returns a copy of these settings with only the fields depending on the given preference key
+     * re-read. Returns this instance if the key is not held by {@link SettingsValues}.
+     */
+    public SettingsValues withChangedPreference(final SharedPreferences prefs,
+            final Resources res, final String key) {
+        if (!isTrackedPreference(key)) {
+            return this;
+        }
+        return new SettingsValues(this, prefs, res, key);
+    }
+
+    /**
+     * Returns a copy of these settings for a different input field. The preference derived part
+     * is shared with this instance.
+     */
+    public SettingsValues withInputAttributes(final InputAttributes inputAttributes) {
+        return new SettingsValues(this, inputAttributes);
+    }
+
 
     public boolean isSameInputType(final EditorInfo editorInfo) {
         return mInputAttributes.isSameInputType(editorInfo);
@@ -100,4 +224,8 @@ public class SettingsValues {
     public boolean hasSameOrientation(final Configuration configuration) {
         return mDisplayOrientation == configuration.orientation;
     }
+
+    public boolean hasSameLocale(final Configuration configuration) {
+        return mLocale != null && mLocale.equals(configuration.locale);
+    }
 }
@@ -0,0 +1,44 @@
+package rkr.simplekeyboard.inputmethod.latin.utils;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Utilities to manage the background executor used for work that must stay off the UI thread.
+ */
+public final class ExecutorUtils {
+    private static final String THREAD_NAME = "KeyboardBackground";
+
+    private static ExecutorService sBackgroundExecutor;
+
+    private ExecutorUtils() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Returns the single, low priority background executor. Tasks run one at a time in the order
+     * they were submitted, so they must be short.
+     */
+    public static synchronized ExecutorService getBackgroundExecutor() {
+        if (sBackgroundExecutor == null) {
+            sBackgroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, THREAD_NAME);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sBackgroundExecutor;
+    }
+}
@@ -0,0 +1,133 @@
+package rkr.simplekeyboard.inputmethod.latin.utils;
+
+import android.content.ComponentCallbacks2;
+
+import java.util.ArrayList;
+
+/**
+ * Tiered memory release policy for the keyboard's caches.
+ *
+ * Caches register themselves here with the tier they belong to. On
+ * {@link ComponentCallbacks2#onTrimMemory} the caches of every tier covered by the trim level are
+ * asked to drop what they hold, and they are rebuilt lazily the next time input starts. Only
+ * used on the UI thread.
+ */
+public final class MemoryTrimmer {
+    /**
+     * Bitmaps and other render output that is cheap to redraw, like the emoji atlas. Dropped once
+     * the UI is hidden.
+     */
+    public static final int TIER_BITMAPS = 0;
+    /**
+     * Prediction models and other data read from files: the next character tables, the recent
+     * outputs and the emoji catalogue. Only dropped when the system is running low.
+     */
+    public static final int TIER_CACHES = 1;
+
+    public interface Trimmable {
+        /**
+         * Drop everything held by this cache. It must still work afterwards, rebuilding itself
+         * on demand.
+         */
+        void releaseMemory();
+
+        /**
+         * Start rebuilding what {@link #releaseMemory()} dropped, off the UI thread if it is
+         * expensive. Called when input starts again after a trim.
+         */
+        void rebuild();
+
+        /**
+         * @return an estimate of the memory currently held, in bytes.
+         */
+        long getRetainedBytes();
+    }
+
+    private static final ArrayList<Trimmable> sBitmapCaches = new ArrayList<>();
+    private static final ArrayList<Trimmable> sOtherCaches = new ArrayList<>();
+    private static boolean sHasTrimmed = false;
+
+    private MemoryTrimmer() {
+        // This utility class is not publicly instantiable.
+    }
+
+    public static void register(final Trimmable trimmable, final int tier) {
+        final ArrayList<Trimmable> caches = tier == TIER_BITMAPS ? sBitmapCaches : sOtherCaches;
+        if (!caches.contains(trimmable)) {
+            caches.add(trimmable);
+        }
+    }
+
+    public static void unregister(final Trimmable trimmable) {
+        sBitmapCaches.remove(trimmable);
+        sOtherCaches.remove(trimmable);
+    }
+
+    /**
+     * Release the tiers covered by the given trim level.
+     * @param level one of the {@code ComponentCallbacks2.TRIM_MEMORY_*} levels.
+     */
+    public static void trimMemory(final int level) {
+        if (shouldReleaseBitmaps(level)) {
+            release(sBitmapCaches);
+        }
+        if (shouldReleaseCaches(level)) {
+            release(sOtherCaches);
+        }
+    }
+
+    private static boolean shouldReleaseBitmaps(final int level) {
+        // Whenever the caches go, and also as soon as the UI is hidden.
+        return level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+    }
+
+    private static boolean shouldReleaseCaches(final int level) {
+        // The RUNNING_* levels are sent while we are in the foreground, the others once we are
+        // in the background, where anything held is at risk of getting the process killed.
+        return level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND;
+    }
+
+    private static void release(final ArrayList<Trimmable> caches) {
+        for (int i = 0; i < caches.size(); i++) {
+            caches.get(i).releaseMemory();
+        }
+        if (!caches.isEmpty()) {
+            sHasTrimmed = true;
+        }
+    }
+
+    /**
+     * Called when input starts, to rebuild whatever a previous trim dropped.
+     */
+    public static void onStartInputView() {
+        if (!sHasTrimmed) {
+            return;
+        }
+        sHasTrimmed = false;
+        for (int i = 0; i < sBitmapCaches.size(); i++) {
+            sBitmapCaches.get(i).rebuild();
+        }
+        for (int i = 0; i < sOtherCaches.size(); i++) {
+            sOtherCaches.get(i).rebuild();
+        }
+    }
+
+    /**
+     * @return the estimated memory held by all registered caches, in bytes.
+     */
+    public static long getRetainedBytes() {
+        long total = 0;
+        for (int i = 0; i < sBitmapCaches.size(); i++) {
+            total += sBitmapCaches.get(i).getRetainedBytes();
+        }
+        for (int i = 0; i < sOtherCaches.size(); i++) {
+            total += sOtherCaches.get(i).getRetainedBytes();
+        }
+        return total;
+    }
+}
@@ -21,9 +21,11 @@ import android.graphics.Color;
 import android.os.Build;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.LongSparseArray;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
 public final class ResourceUtils {
@@ -33,7 +35,10 @@ public final class ResourceUtils {
         // This utility class is not publicly instantiable.
     }
 
-    private static final HashMap<String, String> sDeviceOverrideValueMap = new HashMap<>();
+    // Resolved override values keyed by resource id and orientation, see getDeviceOverrideKey.
+    private static final LongSparseArray<String> sDeviceOverrideValueMap =
+            new LongSparseArray<>();
+    private static final HashMap<String, Pattern> sCompiledPatterns = new HashMap<>();
 
     private static final String[] BUILD_KEYS_AND_VALUES = {
         "HARDWARE", Build.HARDWARE,
@@ -58,14 +63,48 @@ public final class ResourceUtils {
         sBuildKeyValuesDebugString = "[" + TextUtils.join(" ", keyValuePairs) + "]";
     }
 
+    /**
+     * Returns the device specific override value from the given "condition,constant" array
+     * resource, or the default value if no condition matches this device. The answer is cached
+     * per resource and orientation, so only the first call for each parses the array.
+     */
     public static String getDeviceOverrideValue(final Resources res, final int overrideResId,
             final String defaultValue) {
         final int orientation = res.getConfiguration().orientation;
-        final String key = overrideResId + "-" + orientation;
-        if (sDeviceOverrideValueMap.containsKey(key)) {
-            return sDeviceOverrideValueMap.get(key);
+        final long key = getDeviceOverrideKey(overrideResId, orientation);
+        synchronized (sDeviceOverrideValueMap) {
+            final int index = sDeviceOverrideValueMap.indexOfKey(key);
+            if (index >= 0) {
+                final String overrideValue = sDeviceOverrideValueMap.valueAt(index);
+                return overrideValue != null ? overrideValue : defaultValue;
+            }
         }
+        final String overrideValue = resolveDeviceOverrideValue(res, overrideResId, key);
+        return overrideValue != null ? overrideValue : defaultValue;
+    }
+
+    /**
+     * Resolve the given override arrays on the background executor, so that the answer is
+     * already cached when the settings are first read.
+     */
+    public static void prefetchDeviceOverrideValues(final Resources res,
+            final int... overrideResIds) {
+        ExecutorUtils.getBackgroundExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                for (final int overrideResId : overrideResIds) {
+                    getDeviceOverrideValue(res, overrideResId, null);
+                }
+            }
+        });
+    }
 
+    private static long getDeviceOverrideKey(final int overrideResId, final int orientation) {
+        return ((long) overrideResId << 32) | (orientation & 0xFFFFFFFFL);
+    }
+
+    private static String resolveDeviceOverrideValue(final Resources res, final int overrideResId,
+            final long key) {
         final String[] overrideArray = res.getStringArray(overrideResId);
         final String overrideValue = findConstantForKeyValuePairs(sBuildKeyValues, overrideArray);
         // The overrideValue might be an empty string.
@@ -74,12 +113,12 @@ public final class ResourceUtils {
                     + " resource="+ res.getResourceEntryName(overrideResId)
                     + " build=" + sBuildKeyValuesDebugString
                     + " override=" + overrideValue);
+        }
+        synchronized (sDeviceOverrideValueMap) {
+            // A null value records that nothing matched, so the default is used next time.
             sDeviceOverrideValueMap.put(key, overrideValue);
-            return overrideValue;
         }
-
-        sDeviceOverrideValueMap.put(key, defaultValue);
-        return defaultValue;
+        return overrideValue;
     }
 
     @SuppressWarnings("serial")
@@ -160,7 +199,7 @@ public final class ResourceUtils {
             }
             final String patternRegexpValue = pattern.substring(posEqual + 1);
             try {
-                if (!value.matches(patternRegexpValue)) {
+                if (!getCompiledPattern(patternRegexpValue).matcher(value).matches()) {
                     matchedAll = false;
                     // And continue walking through all patterns.
                 }
@@ -171,6 +210,21 @@ public final class ResourceUtils {
         return matchedAll;
     }
 
+    /**
+     * Returns the compiled form of a condition pattern. {@link String#matches} would compile it
+     * again on every call, and the same patterns appear in several override arrays.
+     */
+    private static Pattern getCompiledPattern(final String regexp) {
+        synchronized (sCompiledPatterns) {
+            Pattern pattern = sCompiledPatterns.get(regexp);
+            if (pattern == null) {
+                pattern = Pattern.compile(regexp);
+                sCompiledPatterns.put(regexp, pattern);
+            }
+            return pattern;
+        }
+    }
+
     public static boolean isBrightColor(int color) {
         if (android.R.color.transparent == color) {
             return true;
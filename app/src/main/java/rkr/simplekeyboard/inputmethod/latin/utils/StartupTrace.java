@@ -0,0 +1,40 @@
+package rkr.simplekeyboard.inputmethod.latin.utils;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Measures the cold start of the input method, from {@link android.app.Service#onCreate} to the
+ * first time the keyboard is drawn. The result is logged once and kept for the IME dump.
+ */
+public final class StartupTrace {
+    private static final String TAG = StartupTrace.class.getSimpleName();
+
+    private static long sCreateTime = -1;
+    private static long sFirstDrawDuration = -1;
+
+    private StartupTrace() {
+        // This utility class is not publicly instantiable.
+    }
+
+    public static void markCreate() {
+        sCreateTime = SystemClock.uptimeMillis();
+        sFirstDrawDuration = -1;
+    }
+
+    public static void markFirstDraw() {
+        if (sCreateTime < 0 || sFirstDrawDuration >= 0) {
+            return;
+        }
+        sFirstDrawDuration = SystemClock.uptimeMillis() - sCreateTime;
+        Log.i(TAG, "onCreate to first onDraw: " + sFirstDrawDuration + " ms");
+    }
+
+    /**
+     * Returns the time from onCreate to the first draw in milliseconds, or -1 if the keyboard
+     * hasn't been drawn yet.
+     */
+    public static long getFirstDrawDuration() {
+        return sFirstDrawDuration;
+    }
+}
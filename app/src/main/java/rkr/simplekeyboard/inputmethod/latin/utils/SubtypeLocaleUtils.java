@@ -18,15 +18,19 @@ package rkr.simplekeyboard.inputmethod.latin.utils;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.inputmethod.InputMethodSubtype;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Locale;
 
 import rkr.simplekeyboard.inputmethod.R;
 import rkr.simplekeyboard.inputmethod.latin.common.LocaleUtils;
 import rkr.simplekeyboard.inputmethod.latin.common.StringUtils;
+import rkr.simplekeyboard.inputmethod.latin.define.DebugFlags;
 
 import static rkr.simplekeyboard.inputmethod.latin.common.Constants.Subtype.ExtraValue.KEYBOARD_LAYOUT_SET;
 import static rkr.simplekeyboard.inputmethod.latin.common.Constants.Subtype.ExtraValue.UNTRANSLATABLE_STRING_IN_SUBTYPE_NAME;
@@ -43,21 +47,19 @@ public final class SubtypeLocaleUtils {
     public static final String QWERTY = "qwerty";
     public static final int UNKNOWN_KEYBOARD_LAYOUT = R.string.subtype_generic;
 
-    private static volatile boolean sInitialized = false;
     private static final Object sInitializeLock = new Object();
-    private static Resources sResources;
+    private static volatile Resources sResources;
+    // True once the string array tables below have been read. The resource ids they refer to are
+    // only looked up on demand, see getNameResId.
+    private static boolean sTablesLoaded = false;
     // Keyboard layout to its display name map.
     private static final HashMap<String, String> sKeyboardLayoutToDisplayNameMap = new HashMap<>();
-    // Keyboard layout to subtype name resource id map.
-    private static final HashMap<String, Integer> sKeyboardLayoutToNameIdsMap = new HashMap<>();
-    // Exceptional locale whose name should be displayed in Locale.ROOT.
-    private static final HashMap<String, Integer> sExceptionalLocaleDisplayedInRootLocale =
-            new HashMap<>();
-    // Exceptional locale to subtype name resource id map.
-    private static final HashMap<String, Integer> sExceptionalLocaleToNameIdsMap = new HashMap<>();
-    // Exceptional locale to subtype name with layout resource id map.
-    private static final HashMap<String, Integer> sExceptionalLocaleToWithLayoutNameIdsMap =
-            new HashMap<>();
+    // Exceptional locales whose name should be displayed in Locale.ROOT.
+    private static final HashSet<String> sExceptionalLocaleDisplayedInRootLocale = new HashSet<>();
+    // Exceptional locales which have their own subtype name resources.
+    private static final HashSet<String> sExceptionalLocales = new HashSet<>();
+    // Memoised results of Resources.getIdentifier, keyed by resource name.
+    private static final HashMap<String, Integer> sResourceNameToIdMap = new HashMap<>();
     private static final String SUBTYPE_NAME_RESOURCE_PREFIX =
             "string/subtype_";
     private static final String SUBTYPE_NAME_RESOURCE_GENERIC_PREFIX =
@@ -75,51 +77,41 @@ public final class SubtypeLocaleUtils {
         // Intentional empty constructor for utility class.
     }
 
-    // Note that this initialization method can be called multiple times.
+    // Note that this initialization method can be called multiple times. It only keeps the
+    // resources: the tables are read on first use, and the name resource ids are looked up one
+    // at a time when they are asked for.
     public static void init(final Context context) {
         synchronized (sInitializeLock) {
-            if (!sInitialized) {
-                initLocked(context);
-                sInitialized = true;
+            if (sResources == null) {
+                sResources = context.getResources();
             }
         }
     }
 
-    private static void initLocked(final Context context) {
-        final Resources res = context.getResources();
-        sResources = res;
+    private static void ensureTablesLoadedLocked() {
+        if (sTablesLoaded) {
+            return;
+        }
+        final Resources res = sResources;
+        if (res == null) {
+            // Called before init(): leave the tables empty, so the callers return their
+            // fallbacks, and read them once there are resources.
+            Log.w(TAG, "Subtype tables used before init()");
+            return;
+        }
+        final long startTime = SystemClock.uptimeMillis();
 
         final String[] predefinedLayoutSet = res.getStringArray(R.array.predefined_layouts);
         final String[] layoutDisplayNames = res.getStringArray(
                 R.array.predefined_layout_display_names);
         for (int i = 0; i < predefinedLayoutSet.length; i++) {
-            final String layoutName = predefinedLayoutSet[i];
-            sKeyboardLayoutToDisplayNameMap.put(layoutName, layoutDisplayNames[i]);
-            final String resourceName = SUBTYPE_NAME_RESOURCE_GENERIC_PREFIX + layoutName;
-            final int resId = res.getIdentifier(resourceName, null, RESOURCE_PACKAGE_NAME);
-            sKeyboardLayoutToNameIdsMap.put(layoutName, resId);
+            sKeyboardLayoutToDisplayNameMap.put(predefinedLayoutSet[i], layoutDisplayNames[i]);
         }
 
-        final String[] exceptionalLocaleInRootLocale = res.getStringArray(
-                R.array.subtype_locale_displayed_in_root_locale);
-        for (final String localeString : exceptionalLocaleInRootLocale) {
-            final String resourceName = SUBTYPE_NAME_RESOURCE_IN_ROOT_LOCALE_PREFIX + localeString;
-            final int resId = res.getIdentifier(resourceName, null, RESOURCE_PACKAGE_NAME);
-            sExceptionalLocaleDisplayedInRootLocale.put(localeString, resId);
-        }
-
-        final String[] exceptionalLocales = res.getStringArray(
-                R.array.subtype_locale_exception_keys);
-        for (final String localeString : exceptionalLocales) {
-            final String resourceName = SUBTYPE_NAME_RESOURCE_PREFIX + localeString;
-            final int resId = res.getIdentifier(resourceName, null, RESOURCE_PACKAGE_NAME);
-            sExceptionalLocaleToNameIdsMap.put(localeString, resId);
-            final String resourceNameWithLayout =
-                    SUBTYPE_NAME_RESOURCE_WITH_LAYOUT_PREFIX + localeString;
-            final int resIdWithLayout = res.getIdentifier(
-                    resourceNameWithLayout, null, RESOURCE_PACKAGE_NAME);
-            sExceptionalLocaleToWithLayoutNameIdsMap.put(localeString, resIdWithLayout);
-        }
+        Collections.addAll(sExceptionalLocaleDisplayedInRootLocale,
+                res.getStringArray(R.array.subtype_locale_displayed_in_root_locale));
+        Collections.addAll(sExceptionalLocales,
+                res.getStringArray(R.array.subtype_locale_exception_keys));
 
         final String[] keyboardLayoutSetMap = res.getStringArray(
                 R.array.locale_and_extra_value_to_keyboard_layout_set_map);
@@ -128,22 +120,52 @@ public final class SubtypeLocaleUtils {
             final String keyboardLayoutSet = keyboardLayoutSetMap[i + 1];
             sLocaleAndExtraValueToKeyboardLayoutSetMap.put(key, keyboardLayoutSet);
         }
+        sTablesLoaded = true;
+        if (DebugFlags.DEBUG_ENABLED) {
+            Log.d(TAG, "Loading subtype tables took "
+                    + (SystemClock.uptimeMillis() - startTime) + " ms");
+        }
+    }
+
+    private static int getNameResIdLocked(final String resourceName) {
+        final Integer cachedResId = sResourceNameToIdMap.get(resourceName);
+        if (cachedResId != null) {
+            return cachedResId;
+        }
+        final int resId = sResources.getIdentifier(resourceName, null, RESOURCE_PACKAGE_NAME);
+        sResourceNameToIdMap.put(resourceName, resId);
+        return resId;
     }
 
     public static boolean isExceptionalLocale(final String localeString) {
-        return sExceptionalLocaleToNameIdsMap.containsKey(localeString);
+        synchronized (sInitializeLock) {
+            ensureTablesLoadedLocked();
+            return sExceptionalLocales.contains(localeString);
+        }
+    }
+
+    private static boolean isDisplayedInRootLocale(final String localeString) {
+        synchronized (sInitializeLock) {
+            ensureTablesLoadedLocked();
+            return sExceptionalLocaleDisplayedInRootLocale.contains(localeString);
+        }
     }
 
     public static int getSubtypeNameId(final String localeString, final String keyboardLayoutName) {
-        if (isExceptionalLocale(localeString)) {
-            return sExceptionalLocaleToWithLayoutNameIdsMap.get(localeString);
+        synchronized (sInitializeLock) {
+            ensureTablesLoadedLocked();
+            if (sExceptionalLocales.contains(localeString)) {
+                return getNameResIdLocked(SUBTYPE_NAME_RESOURCE_WITH_LAYOUT_PREFIX + localeString);
+            }
+            if (!sKeyboardLayoutToDisplayNameMap.containsKey(keyboardLayoutName)) {
+                return UNKNOWN_KEYBOARD_LAYOUT;
+            }
+            return getNameResIdLocked(SUBTYPE_NAME_RESOURCE_GENERIC_PREFIX + keyboardLayoutName);
         }
-        final Integer nameId = sKeyboardLayoutToNameIdsMap.get(keyboardLayoutName);
-        return nameId == null ? UNKNOWN_KEYBOARD_LAYOUT : nameId;
     }
 
     public static Locale getDisplayLocaleOfSubtypeLocale(final String localeString) {
-        if (sExceptionalLocaleDisplayedInRootLocale.containsKey(localeString)) {
+        if (isDisplayedInRootLocale(localeString)) {
             return Locale.ROOT;
         }
         return LocaleUtils.constructLocaleFromString(localeString);
@@ -163,7 +185,7 @@ public final class SubtypeLocaleUtils {
     public static String getSubtypeLanguageDisplayName(final String localeString) {
         final Locale displayLocale = getDisplayLocaleOfSubtypeLocale(localeString);
         final String languageString;
-        if (sExceptionalLocaleDisplayedInRootLocale.containsKey(localeString)) {
+        if (isDisplayedInRootLocale(localeString)) {
             languageString = localeString;
         } else {
             languageString = LocaleUtils.constructLocaleFromString(localeString).getLanguage();
@@ -174,13 +196,18 @@ public final class SubtypeLocaleUtils {
     private static String getSubtypeLocaleDisplayNameInternal(final String localeString,
             final Locale displayLocale) {
         final Integer exceptionalNameResId;
-        if (displayLocale.equals(Locale.ROOT)
-                && sExceptionalLocaleDisplayedInRootLocale.containsKey(localeString)) {
-            exceptionalNameResId = sExceptionalLocaleDisplayedInRootLocale.get(localeString);
-        } else if (sExceptionalLocaleToNameIdsMap.containsKey(localeString)) {
-            exceptionalNameResId = sExceptionalLocaleToNameIdsMap.get(localeString);
-        } else {
-            exceptionalNameResId = null;
+        synchronized (sInitializeLock) {
+            ensureTablesLoadedLocked();
+            if (displayLocale.equals(Locale.ROOT)
+                    && sExceptionalLocaleDisplayedInRootLocale.contains(localeString)) {
+                exceptionalNameResId = getNameResIdLocked(
+                        SUBTYPE_NAME_RESOURCE_IN_ROOT_LOCALE_PREFIX + localeString);
+            } else if (sExceptionalLocales.contains(localeString)) {
+                exceptionalNameResId = getNameResIdLocked(
+                        SUBTYPE_NAME_RESOURCE_PREFIX + localeString);
+            } else {
+                exceptionalNameResId = null;
+            }
         }
 
         final String displayName;
@@ -264,7 +291,10 @@ public final class SubtypeLocaleUtils {
     }
 
     public static String getKeyboardLayoutSetDisplayName(final String layoutName) {
-        return sKeyboardLayoutToDisplayNameMap.get(layoutName);
+        synchronized (sInitializeLock) {
+            ensureTablesLoadedLocked();
+            return sKeyboardLayoutToDisplayNameMap.get(layoutName);
+        }
     }
 
     public static String getKeyboardLayoutSetName(final InputMethodSubtype subtype) {
@@ -273,7 +303,11 @@ public final class SubtypeLocaleUtils {
             // This subtype doesn't have a keyboardLayoutSet extra value, so lookup its keyboard
             // layout set in sLocaleAndExtraValueToKeyboardLayoutSetMap to keep it compatible with
             // pre-JellyBean.
-            keyboardLayoutSet = sLocaleAndExtraValueToKeyboardLayoutSetMap.get(subtype.getLocale());
+            synchronized (sInitializeLock) {
+                ensureTablesLoadedLocked();
+                keyboardLayoutSet =
+                        sLocaleAndExtraValueToKeyboardLayoutSetMap.get(subtype.getLocale());
+            }
         }
         // TODO: Remove this null check when InputMethodManager.getCurrentInputMethodSubtype is
         // fixed.
@@ -0,0 +1,158 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import rkr.simplekeyboard.inputmethod.latin.common.DictionaryTrie;
+
+/**
+ * Reports the size of the completions dictionary and how long completing a prefix takes, with the
+ * keyboard's own {@link DictionaryTrie} reading it through a memory mapping; and, given a corpus,
+ * how many letters the completions save.
+ *
+ * Usage: {@code DictionaryBenchmark [--list file] [--shown n] [corpus files...]}. Every prefix
+ * of one to four letters of a listed word is completed. For the corpus, a word is typed a letter
+ * at a time until it is one of the {@code n} completions shown for what has been typed, then
+ * taken with one gesture.
+ */
+public final class DictionaryBenchmark {
+    static final String DEFAULT_LIST_PATH = "app/src/main/dictionary/en.txt";
+    static final int DEFAULT_SHOWN = 4;
+    private static final int MAX_PREFIX_LENGTH = 4;
+    private static final int WARM_UP_ROUNDS = 20;
+    private static final int ROUNDS = 20;
+
+    private DictionaryBenchmark() {
+        // This utility class is not publicly instantiable.
+    }
+
+    private static void usage() {
+        System.err.println("Usage: DictionaryBenchmark [--list file] [--shown n]"
+                + " [corpus files...]");
+        System.exit(2);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        String listPath = DEFAULT_LIST_PATH;
+        int shown = DEFAULT_SHOWN;
+        final List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            final boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("--list") && hasValue) {
+                listPath = args[++i];
+            } else if (args[i].equals("--shown") && hasValue) {
+                shown = Integer.parseInt(args[++i]);
+            } else if (args[i].startsWith("--")) {
+                usage();
+            } else {
+                files.add(args[i]);
+            }
+        }
+        final List<String> words = DictionaryCompiler.read(new File(listPath));
+        final File file = File.createTempFile("dictionary", ".idx");
+        file.deleteOnExit();
+        DictionaryCompiler.write(words, file);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final DictionaryTrie dictionary = new DictionaryTrie(
+                    raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+            int letters = 0;
+            for (final String word : words) {
+                letters += word.length();
+            }
+            System.out.printf("Dictionary size:       %d bytes%n", raf.length());
+            System.out.printf("Words:                 %d (%d letters)%n", words.size(), letters);
+            System.out.printf("Bytes per word:        %.1f%n",
+                    (double) raf.length() / words.size());
+
+            final List<String> prefixes = getPrefixes(words);
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                for (final String prefix : prefixes) {
+                    dictionary.getCompletions(prefix, shown);
+                }
+            }
+            final long[] times = new long[prefixes.size() * ROUNDS];
+            int t = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                for (final String prefix : prefixes) {
+                    final long start = System.nanoTime();
+                    dictionary.getCompletions(prefix, shown);
+                    times[t++] = System.nanoTime() - start;
+                }
+            }
+            Arrays.sort(times);
+            long total = 0;
+            for (final long time : times) {
+                total += time;
+            }
+            System.out.printf("Completions:           %d (%d prefixes, %d shown)%n",
+                    times.length, prefixes.size(), shown);
+            System.out.printf("Time mean:             %.1f us%n", total / 1000.0 / times.length);
+            System.out.printf("Time median:           %.1f us%n", times[times.length / 2] / 1000.0);
+            System.out.printf("Time 99th:             %.1f us%n",
+                    times[(int) (times.length * 0.99)] / 1000.0);
+            System.out.printf("Time max:              %.1f us%n", times[times.length - 1] / 1000.0);
+
+            if (!files.isEmpty()) {
+                printSavings(dictionary, GestureSimulator.readCorpus(files), shown);
+            }
+        }
+    }
+
+    private static void printSavings(final DictionaryTrie dictionary, final String corpus,
+            final int shown) {
+        int wordCount = 0;
+        int letters = 0;
+        int gestures = 0;
+        int completed = 0;
+        for (final String token : corpus.toLowerCase(Locale.ROOT).split("[^\\p{L}']+")) {
+            if (token.isEmpty()) {
+                continue;
+            }
+            wordCount++;
+            letters += token.length();
+            // Completions show once a word has been started.
+            int typed = 1;
+            boolean isCompleted = false;
+            // Stop when the rest of the word is a single letter: taking it saves nothing.
+            while (typed < token.length() - 1 && !isCompleted) {
+                for (final String completion : dictionary.getCompletions(
+                        token.substring(0, typed), shown)) {
+                    isCompleted |= completion.equals(token);
+                }
+                if (!isCompleted) {
+                    typed++;
+                }
+            }
+            if (isCompleted) {
+                completed++;
+                gestures += typed + 1;
+            } else {
+                gestures += token.length();
+            }
+        }
+        System.out.printf("Corpus words:          %d (%d letters)%n", wordCount, letters);
+        System.out.printf("Words completed:       %.1f%%%n", 100.0 * completed / wordCount);
+        System.out.printf("Gestures per word:     %.2f, from %.2f%n",
+                (double) gestures / wordCount, (double) letters / wordCount);
+        System.out.printf("Gestures saved:        %.1f%%%n",
+                100.0 * (letters - gestures) / letters);
+    }
+
+    private static List<String> getPrefixes(final List<String> words) {
+        final TreeSet<String> prefixes = new TreeSet<>();
+        for (final String word : words) {
+            for (int n = 1; n <= MAX_PREFIX_LENGTH && n <= word.length(); n++) {
+                prefixes.add(word.substring(0, n));
+            }
+        }
+        return new ArrayList<>(prefixes);
+    }
+}
@@ -0,0 +1,207 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compiles the word list (app/src/main/dictionary) into the trie the keyboard's word completions
+ * read. Run by the app's compileDictionary build task.
+ *
+ * Each word gets a frequency from 1 to 255 from its place in the list, on a log scale. Each node
+ * of the trie also holds the highest frequency under it, and its children are sorted by that, so
+ * the most frequent completions of a prefix are found by a best-first walk that stops as soon as
+ * it has enough. Nodes are written children first, and a node the same as one already written
+ * (the same frequencies, letters and children, as most word endings are) is written only once.
+ * The asset is big-endian, and stored uncompressed so the keyboard can memory-map it:
+ * <pre>
+ *   int magic, int version, int word count, int root node offset
+ *   nodes: byte frequency (0 if no word ends here), byte highest frequency under the node,
+ *     byte child count, then per child: char, 3-byte node offset (from the start of the file)
+ * </pre>
+ *
+ * Keep in step with DictionaryTrie in the app, which reads it.
+ */
+public final class DictionaryCompiler {
+    public static final int MAGIC = 0x4B394454; // "K9DT"
+    public static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAX_FREQUENCY = 255;
+    private static final int MAX_OFFSET = 0xFFFFFF;
+    private static final int MAX_CHILDREN = 255;
+    private static final String COMMENT = "#";
+
+    /** A node of the trie while it is built. */
+    private static final class Node {
+        int mFrequency;
+        int mBest;
+        final TreeMap<Character, Node> mChildren = new TreeMap<>();
+        // Where the node was written, once it has been.
+        int mOffset = -1;
+    }
+
+    private DictionaryCompiler() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /** The words of the list, most common first. */
+    static List<String> read(final File file) throws IOException {
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        final List<String> words = new ArrayList<>();
+        final Set<String> seen = new HashSet<>();
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            final String location = file.getName() + ":" + (i + 1);
+            if (line.isEmpty() || line.startsWith(COMMENT)) {
+                continue;
+            }
+            for (final String word : line.split("\\s+")) {
+                if (!word.equals(word.toLowerCase(Locale.ROOT))) {
+                    throw new IOException(location + ": " + word + " isn't lower case");
+                }
+                for (int c = 0; c < word.length(); c++) {
+                    final char ch = word.charAt(c);
+                    if (!Character.isLetter(ch) && ch != '\'' && ch != '-') {
+                        throw new IOException(location + ": " + word + " has a '" + ch + "'");
+                    }
+                }
+                if (!seen.add(word)) {
+                    throw new IOException(location + ": " + word + " is listed twice");
+                }
+                words.add(word);
+            }
+        }
+        if (words.isEmpty()) {
+            throw new IOException(file.getName() + ": no words");
+        }
+        return words;
+    }
+
+    /** The frequency of the word at a place in a list of a number of words. */
+    static int getFrequency(final int place, final int count) {
+        final double scale = 1 - Math.log(place + 1) / Math.log(count + 1);
+        return 1 + (int) Math.round((MAX_FREQUENCY - 1) * scale);
+    }
+
+    static byte[] build(final List<String> words) throws IOException {
+        final Node root = new Node();
+        for (int w = 0; w < words.size(); w++) {
+            final String word = words.get(w);
+            final int frequency = getFrequency(w, words.size());
+            Node node = root;
+            node.mBest = Math.max(node.mBest, frequency);
+            for (int c = 0; c < word.length(); c++) {
+                Node child = node.mChildren.get(word.charAt(c));
+                if (child == null) {
+                    child = new Node();
+                    node.mChildren.put(word.charAt(c), child);
+                }
+                child.mBest = Math.max(child.mBest, frequency);
+                node = child;
+            }
+            node.mFrequency = frequency;
+        }
+
+        final ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        final Map<String, Integer> written = new HashMap<>();
+        final int rootOffset = write(root, nodes, written);
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + nodes.size());
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(words.size()).putInt(rootOffset);
+        buffer.put(nodes.toByteArray());
+        return buffer.array();
+    }
+
+    /** Write a node after its children, unless the same node was written already. */
+    private static int write(final Node node, final ByteArrayOutputStream out,
+            final Map<String, Integer> written) throws IOException {
+        if (node.mChildren.size() > MAX_CHILDREN) {
+            throw new IOException("A node has more than " + MAX_CHILDREN + " children");
+        }
+        final List<Map.Entry<Character, Node>> children =
+                new ArrayList<>(node.mChildren.entrySet());
+        for (final Map.Entry<Character, Node> child : children) {
+            child.getValue().mOffset = write(child.getValue(), out, written);
+        }
+        // Most frequent first, so a walk can stop early; ties stay in letter order.
+        Collections.sort(children, new Comparator<Map.Entry<Character, Node>>() {
+            @Override
+            public int compare(final Map.Entry<Character, Node> a,
+                    final Map.Entry<Character, Node> b) {
+                return b.getValue().mBest - a.getValue().mBest;
+            }
+        });
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(node.mFrequency);
+        bytes.write(node.mBest);
+        bytes.write(children.size());
+        for (final Map.Entry<Character, Node> child : children) {
+            final int offset = child.getValue().mOffset;
+            bytes.write(child.getKey() >> 8);
+            bytes.write(child.getKey());
+            bytes.write(offset >> 16);
+            bytes.write(offset >> 8);
+            bytes.write(offset);
+        }
+        final String key = new String(bytes.toByteArray(), StandardCharsets.ISO_8859_1);
+        final Integer existing = written.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final int offset = HEADER_SIZE + out.size();
+        if (offset > MAX_OFFSET) {
+            throw new IOException("The dictionary is too big for 3-byte node offsets");
+        }
+        bytes.writeTo(out);
+        written.put(key, offset);
+        return offset;
+    }
+
+    public static void write(final List<String> words, final File output) throws IOException {
+        final byte[] dictionary = build(words);
+        final File dir = output.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.write(dictionary);
+        }
+    }
+
+    /**
+     * Usage: {@code DictionaryCompiler <word list> <output file>}. Exits with an error, and
+     * writes nothing, if the list can't be read.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: DictionaryCompiler <word list> <output file>");
+            System.exit(2);
+        }
+        final List<String> words;
+        try {
+            words = read(new File(args[0]));
+        } catch (final IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        write(words, new File(args[1]));
+    }
+}
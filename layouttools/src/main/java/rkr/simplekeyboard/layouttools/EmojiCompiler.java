@@ -0,0 +1,201 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles the emoji catalogue (app/src/main/emoji/emoji.txt) into the binary asset the
+ * keyboard's emoji pages read, and the name index {@link EmojiSearchIndex} writes. Run by the
+ * app's compileEmoji build task.
+ *
+ * The asset is big-endian:
+ * <pre>
+ *   int magic, int version
+ *   int group count, then per group: int UTF-8 length, UTF-8 label, int flags,
+ *     int first page, int page count
+ *   int page count, then per page: int offset, int length (bytes, into the page data)
+ *   page data: per page, its emoji as UTF-8, separated by spaces
+ * </pre>
+ * Each group starts on a new page, so a page can be decoded without reading any other.
+ *
+ * Keep in step with EmojiCatalogue in the app.
+ */
+public final class EmojiCompiler {
+    public static final int MAGIC = 0x4B39454D; // "K9EM"
+    public static final int VERSION = 1;
+    /** Emoji per page: all the cells but the centre quadrant, which holds the page keys. */
+    public static final int PAGE_SIZE = 72;
+    /** Group flag: the keyboard adds a flag for every country after the listed emoji. */
+    public static final int FLAG_REGIONAL = 1;
+
+    private static final String COMMENT = "#";
+    private static final String GROUP = "group";
+    private static final String KEYWORDS = "keywords";
+    private static final String REGIONAL = "regional";
+
+    /** One group of the catalogue. */
+    static final class Group {
+        final String mName;
+        final String mLabel;
+        final boolean mIsRegional;
+        final List<String> mEmoji = new ArrayList<>();
+
+        Group(final String name, final String label, final boolean isRegional) {
+            mName = name;
+            mLabel = label;
+            mIsRegional = isRegional;
+        }
+    }
+
+    /** The groups, and the search words given for emoji whose names don't say enough. */
+    static final class Catalogue {
+        final List<Group> mGroups = new ArrayList<>();
+        final Map<String, List<String>> mKeywords = new LinkedHashMap<>();
+    }
+
+    private EmojiCompiler() {
+        // This utility class is not publicly instantiable.
+    }
+
+    static Catalogue read(final File file) throws IOException {
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        final Catalogue catalogue = new Catalogue();
+        final List<Group> groups = catalogue.mGroups;
+        final Set<String> names = new HashSet<>();
+        final Set<String> seen = new HashSet<>();
+        Group group = null;
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            final String location = file.getName() + ":" + (i + 1);
+            if (line.isEmpty() || line.startsWith(COMMENT)) {
+                continue;
+            }
+            final String[] tokens = line.split("\\s+");
+            if (tokens[0].equals(GROUP)) {
+                if (tokens.length < 3 || tokens.length > 4
+                        || (tokens.length == 4 && !tokens[3].equals(REGIONAL))) {
+                    throw new IOException(location + ": expected 'group NAME LABEL [regional]'");
+                }
+                if (!names.add(tokens[1])) {
+                    throw new IOException(location + ": group " + tokens[1]
+                            + " is already defined");
+                }
+                group = new Group(tokens[1], tokens[2], tokens.length == 4);
+                groups.add(group);
+                continue;
+            }
+            if (tokens[0].equals(KEYWORDS)) {
+                if (tokens.length < 3) {
+                    throw new IOException(location + ": expected 'keywords EMOJI WORD...'");
+                }
+                final List<String> words = new ArrayList<>();
+                for (int t = 2; t < tokens.length; t++) {
+                    words.add(tokens[t]);
+                }
+                catalogue.mKeywords.put(tokens[1], words);
+                continue;
+            }
+            if (group == null) {
+                throw new IOException(location + ": emoji before the first group line");
+            }
+            for (final String emoji : tokens) {
+                if (!seen.add(emoji)) {
+                    throw new IOException(location + ": " + emoji + " is listed twice");
+                }
+                group.mEmoji.add(emoji);
+            }
+        }
+        if (groups.isEmpty()) {
+            throw new IOException(file.getName() + ": no groups");
+        }
+        for (final Group g : groups) {
+            if (g.mEmoji.isEmpty() && !g.mIsRegional) {
+                throw new IOException(file.getName() + ": group " + g.mName + " is empty");
+            }
+        }
+        for (final String emoji : catalogue.mKeywords.keySet()) {
+            if (!seen.contains(emoji)) {
+                throw new IOException(file.getName() + ": keywords for " + emoji
+                        + ", which isn't listed");
+            }
+        }
+        return catalogue;
+    }
+
+    public static void write(final List<Group> groups, final File output) throws IOException {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final List<int[]> pages = new ArrayList<>();
+        final int[] firstPages = new int[groups.size()];
+        for (int g = 0; g < groups.size(); g++) {
+            firstPages[g] = pages.size();
+            final List<String> emoji = groups.get(g).mEmoji;
+            for (int start = 0; start < emoji.size(); start += PAGE_SIZE) {
+                final String page = String.join(" ",
+                        emoji.subList(start, Math.min(start + PAGE_SIZE, emoji.size())));
+                final byte[] bytes = page.getBytes(StandardCharsets.UTF_8);
+                pages.add(new int[] { data.size(), bytes.length });
+                data.write(bytes);
+            }
+        }
+
+        final File dir = output.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(groups.size());
+            for (int g = 0; g < groups.size(); g++) {
+                final Group group = groups.get(g);
+                final byte[] label = group.mLabel.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(label.length);
+                out.write(label);
+                out.writeInt(group.mIsRegional ? FLAG_REGIONAL : 0);
+                out.writeInt(firstPages[g]);
+                out.writeInt((g + 1 < groups.size() ? firstPages[g + 1] : pages.size())
+                        - firstPages[g]);
+            }
+            out.writeInt(pages.size());
+            for (final int[] page : pages) {
+                out.writeInt(page[0]);
+                out.writeInt(page[1]);
+            }
+            data.writeTo(out);
+        }
+    }
+
+    /**
+     * Usage: {@code EmojiCompiler <catalogue file> <output file> <index file>}. Exits with an
+     * error, and writes nothing, if the catalogue can't be read.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 3) {
+            System.err.println("Usage: EmojiCompiler <catalogue file> <output file> <index file>");
+            System.exit(2);
+        }
+        final Catalogue catalogue;
+        try {
+            catalogue = read(new File(args[0]));
+        } catch (final IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        write(catalogue.mGroups, new File(args[1]));
+        EmojiSearchIndex.write(catalogue, new File(args[2]));
+    }
+}
@@ -0,0 +1,120 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import rkr.simplekeyboard.inputmethod.keyboard.internal.EmojiNameIndex;
+
+/**
+ * Reports the size of the emoji name index and how long searches of it take, reading it through a
+ * memory mapping as the keyboard does. A search is the keyboard's own: the index searched by
+ * EmojiNameIndex, and the country names matched for the flags.
+ *
+ * Usage: {@code EmojiSearchBenchmark [catalogue file]}. Every prefix of one to four letters that
+ * some word starts with is searched for, which is what typing a query one letter at a time does.
+ */
+public final class EmojiSearchBenchmark {
+    static final String DEFAULT_CATALOGUE_PATH = "app/src/main/emoji/emoji.txt";
+    private static final int MAX_PREFIX_LENGTH = 4;
+    private static final int WARM_UP_ROUNDS = 20;
+    private static final int ROUNDS = 20;
+
+    private EmojiSearchBenchmark() {
+        // This utility class is not publicly instantiable.
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final EmojiCompiler.Catalogue catalogue =
+                EmojiCompiler.read(new File(args.length > 0 ? args[0] : DEFAULT_CATALOGUE_PATH));
+        final File file = File.createTempFile("emoji-names", ".idx");
+        file.deleteOnExit();
+        EmojiSearchIndex.write(catalogue, file);
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            final MappedByteBuffer buffer =
+                    raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            final EmojiNameIndex index = new EmojiNameIndex(buffer);
+            int emojiCount = 0;
+            for (final EmojiCompiler.Group group : catalogue.mGroups) {
+                emojiCount += group.mEmoji.size();
+            }
+            final int words = buffer.getInt(8);
+            final int references = buffer.getInt(12);
+            System.out.printf("Index size:            %d bytes%n", raf.length());
+            System.out.printf("Emoji:                 %d%n", emojiCount);
+            System.out.printf("Words:                 %d%n", words);
+            System.out.printf("References:            %d%n", references);
+            System.out.printf("Bytes per emoji:       %.1f%n", (double) raf.length() / emojiCount);
+
+            // Made once in the background by the keyboard, so timed apart from the searches.
+            final String[] countries = Locale.getISOCountries();
+            Arrays.sort(countries);
+            final long namesStart = System.nanoTime();
+            final String[] names = EmojiNameIndex.getCountryNames(countries, Locale.getDefault());
+            System.out.printf("Country names:         %d in %.1f ms%n", names.length,
+                    (System.nanoTime() - namesStart) / 1e6);
+
+            final List<String> prefixes = getPrefixes(catalogue);
+            for (int i = 0; i < WARM_UP_ROUNDS; i++) {
+                for (final String prefix : prefixes) {
+                    search(index, names, prefix);
+                }
+            }
+            final long[] times = new long[prefixes.size() * ROUNDS];
+            long results = 0;
+            int t = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                for (final String prefix : prefixes) {
+                    final long start = System.nanoTime();
+                    results += search(index, names, prefix);
+                    times[t++] = System.nanoTime() - start;
+                }
+            }
+            Arrays.sort(times);
+            long total = 0;
+            for (final long time : times) {
+                total += time;
+            }
+            System.out.printf("Queries:               %d (%d prefixes)%n", times.length,
+                    prefixes.size());
+            System.out.printf("Mean results:          %.1f%n", (double) results / times.length);
+            System.out.printf("Query time mean:       %.1f us%n", total / 1000.0 / times.length);
+            System.out.printf("Query time median:     %.1f us%n", times[times.length / 2] / 1000.0);
+            System.out.printf("Query time 99th:       %.1f us%n",
+                    times[(int) (times.length * 0.99)] / 1000.0);
+            System.out.printf("Query time max:        %.1f us%n",
+                    times[times.length - 1] / 1000.0);
+        }
+    }
+
+    // The number of results, emoji and flags, as EmojiSearch finds them.
+    private static int search(final EmojiNameIndex index, final String[] countryNames,
+            final String query) {
+        final String[] terms = EmojiNameIndex.getTerms(query);
+        return index.query(terms).length
+                + EmojiNameIndex.matchCountries(countryNames, terms).length;
+    }
+
+    private static List<String> getPrefixes(final EmojiCompiler.Catalogue catalogue) {
+        final TreeSet<String> prefixes = new TreeSet<>();
+        for (final EmojiCompiler.Group group : catalogue.mGroups) {
+            for (final String emoji : group.mEmoji) {
+                for (final String word : EmojiSearchIndex.getWords(emoji,
+                        catalogue.mKeywords.get(emoji))) {
+                    for (int n = 1; n <= MAX_PREFIX_LENGTH && n <= word.length(); n++) {
+                        prefixes.add(word.substring(0, n).toLowerCase(Locale.ROOT));
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(prefixes);
+    }
+}
@@ -0,0 +1,149 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import rkr.simplekeyboard.inputmethod.keyboard.internal.EmojiNameIndex;
+
+/**
+ * The index the keyboard's emoji search reads: every word of every emoji's name, sorted, so the
+ * emoji for a typed prefix are a binary search away.
+ *
+ * Names are the Unicode character names of the emoji's code points, which is what the CLDR short
+ * names are mostly made from, plus the catalogue's keywords lines. The asset is big-endian, and
+ * stored uncompressed so the keyboard can memory-map it:
+ * <pre>
+ *   int magic, int version, int word count (N), int emoji reference count
+ *   int[N + 1] word offsets (into the word bytes)
+ *   int[N + 1] reference starts (into the references)
+ *   int references: page in the catalogue asset &lt;&lt; 8 | place on the page
+ *   word bytes: the words, lower case ASCII, one after another in sorted order
+ * </pre>
+ *
+ * The keyboard searches it with EmojiNameIndex, which reads this format.
+ */
+public final class EmojiSearchIndex {
+    private static final int HEADER_SIZE = EmojiNameIndex.HEADER_SIZE;
+    // Words too common in character names to be worth searching for.
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "and", "for", "in", "of", "on", "the", "to", "with"));
+
+    private EmojiSearchIndex() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /** The words an emoji can be found by. */
+    static Set<String> getWords(final String emoji, final List<String> keywords) {
+        final Set<String> words = new HashSet<>();
+        for (int i = 0; i < emoji.length(); ) {
+            final int cp = emoji.codePointAt(i);
+            i += Character.charCount(cp);
+            // Skip the joiners, variation selectors and tag letters, which are not the subject.
+            if (cp == 0x200D || cp == 0xFE0F || (cp >= 0xE0020 && cp <= 0xE007F)) {
+                continue;
+            }
+            final String name = Character.getName(cp);
+            if (name != null) {
+                addWords(name, words);
+            }
+        }
+        if (keywords != null) {
+            for (final String keyword : keywords) {
+                addWords(keyword, words);
+            }
+        }
+        return words;
+    }
+
+    private static void addWords(final String text, final Set<String> words) {
+        for (final String word : text.toLowerCase(Locale.ROOT).split("[^a-z0-9]+")) {
+            if (!word.isEmpty() && !STOP_WORDS.contains(word)) {
+                words.add(word);
+            }
+        }
+    }
+
+    static byte[] build(final EmojiCompiler.Catalogue catalogue) {
+        final TreeMap<String, List<Integer>> index = new TreeMap<>();
+        int page = 0;
+        for (final EmojiCompiler.Group group : catalogue.mGroups) {
+            final List<String> emoji = group.mEmoji;
+            for (int i = 0; i < emoji.size(); i++) {
+                final int reference = ((page + i / EmojiCompiler.PAGE_SIZE) << 8)
+                        | (i % EmojiCompiler.PAGE_SIZE);
+                for (final String word : getWords(emoji.get(i),
+                        catalogue.mKeywords.get(emoji.get(i)))) {
+                    List<Integer> references = index.get(word);
+                    if (references == null) {
+                        references = new ArrayList<>();
+                        index.put(word, references);
+                    }
+                    references.add(reference);
+                }
+            }
+            page += (emoji.size() + EmojiCompiler.PAGE_SIZE - 1) / EmojiCompiler.PAGE_SIZE;
+        }
+
+        int referenceCount = 0;
+        int wordBytes = 0;
+        for (final Map.Entry<String, List<Integer>> e : index.entrySet()) {
+            referenceCount += e.getValue().size();
+            wordBytes += e.getKey().length();
+        }
+        final int n = index.size();
+        final ByteBuffer buffer = ByteBuffer.allocate(
+                HEADER_SIZE + (n + 1) * 8 + referenceCount * 4 + wordBytes);
+        buffer.putInt(EmojiNameIndex.MAGIC).putInt(EmojiNameIndex.VERSION).putInt(n)
+                .putInt(referenceCount);
+        final int offsetsAt = HEADER_SIZE;
+        final int startsAt = offsetsAt + (n + 1) * 4;
+        final int referencesAt = startsAt + (n + 1) * 4;
+        final int wordsAt = referencesAt + referenceCount * 4;
+        int w = 0;
+        int wordOffset = 0;
+        int referenceStart = 0;
+        for (final Map.Entry<String, List<Integer>> e : index.entrySet()) {
+            buffer.putInt(offsetsAt + w * 4, wordOffset);
+            buffer.putInt(startsAt + w * 4, referenceStart);
+            final byte[] word = e.getKey().getBytes(StandardCharsets.US_ASCII);
+            for (int b = 0; b < word.length; b++) {
+                buffer.put(wordsAt + wordOffset + b, word[b]);
+            }
+            for (final int reference : e.getValue()) {
+                buffer.putInt(referencesAt + referenceStart * 4, reference);
+                referenceStart++;
+            }
+            wordOffset += word.length;
+            w++;
+        }
+        buffer.putInt(offsetsAt + n * 4, wordOffset);
+        buffer.putInt(startsAt + n * 4, referenceStart);
+        return buffer.array();
+    }
+
+    public static void write(final EmojiCompiler.Catalogue catalogue, final File output)
+            throws IOException {
+        final byte[] index = build(catalogue);
+        final File dir = output.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.write(index);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out how a character is typed on the 9x9 layouts, and what that costs.
+ *
+ * A gesture is one touch: the finger goes down on one of the nine quadrants, the quadrant zooms
+ * in to fill the keyboard, and the finger slides to one of its nine cells (or lifts straight away
+ * for the centre cell). Because the zoomed quadrant fills the keyboard, the finger lifts over the
+ * third of the keyboard matching the cell offset, and the next gesture starts from there.
+ *
+ * Positions are measured in thirds of the keyboard, which is also the target width for both
+ * movements, so the time of one gesture under a Fitts-style model is
+ * {@code a + b * (log2(1 + reach) + log2(1 + slide))}.
+ */
+public final class GestureCostModel {
+    public static final double DEFAULT_FITTS_A_MS = 100;
+    public static final double DEFAULT_FITTS_B_MS = 120;
+
+    private static final int SIZE = LayoutSource.SIZE;
+    private static final int POSITIONS = 9;
+    private static final int CENTRE = 4;
+    private static final String SPACE = " ";
+
+    /** The cheapest way to type one token from a given state. */
+    public static final class Path {
+        public final int mGestures;
+        public final int mModeSwitches;
+        public final double mTimeMs;
+        /** Index of the mode and the lift position after the token was typed. */
+        final int mEndMode;
+        final int mEndPosition;
+
+        Path(final int gestures, final int modeSwitches, final double timeMs, final int endMode,
+                final int endPosition) {
+            mGestures = gestures;
+            mModeSwitches = modeSwitches;
+            mTimeMs = timeMs;
+            mEndMode = endMode;
+            mEndPosition = endPosition;
+        }
+    }
+
+    private final String[] mModes;
+    private final String[][][] mTables;
+    // Per mode: target mode of each cell, or -1.
+    private final int[][] mSwitchTargets;
+    private final int mLetterMode;
+    private final int mCapMode;
+    private final double mFittsA;
+    private final double mFittsB;
+    // Fitts time of a gesture starting at position p and ending on cell c: [p * 81 + c].
+    private final double[] mGestureTime;
+    // Longest first: candidate tokens keyed by their first char.
+    private final Map<Character, List<String>> mTokensByFirstChar = new HashMap<>();
+    // Per start state (mode * 9 + position), the cached cheapest path for each token.
+    private final List<Map<String, Path>> mPathCache = new ArrayList<>();
+
+    public GestureCostModel(final LayoutSource source, final double fittsA, final double fittsB) {
+        this(source, null, fittsA, fittsB);
+    }
+
+    /**
+     * @param overrides tables to use instead of the source ones, keyed by mode name. May be null.
+     */
+    public GestureCostModel(final LayoutSource source, final Map<String, String[][]> overrides,
+            final double fittsA, final double fittsB) {
+        final List<String> modes = new ArrayList<>();
+        for (final String mode : source.getModes()) {
+            modes.add(mode);
+        }
+        mModes = modes.toArray(new String[0]);
+        mTables = new String[mModes.length][][];
+        mSwitchTargets = new int[mModes.length][SIZE * SIZE];
+        for (int m = 0; m < mModes.length; m++) {
+            final String[][] override = overrides == null ? null : overrides.get(mModes[m]);
+            mTables[m] = override != null ? override : source.getTable(mModes[m]);
+            for (int c = 0; c < SIZE * SIZE; c++) {
+                final String target = source.getModeForCode(mTables[m][c / SIZE][c % SIZE]);
+                mSwitchTargets[m][c] = target == null ? -1 : modes.indexOf(target);
+            }
+        }
+        mLetterMode = modes.indexOf("LET");
+        mCapMode = modes.indexOf("CAP");
+        mFittsA = fittsA;
+        mFittsB = fittsB;
+        mGestureTime = new double[POSITIONS * SIZE * SIZE];
+        for (int p = 0; p < POSITIONS; p++) {
+            for (int c = 0; c < SIZE * SIZE; c++) {
+                final int row = c / SIZE;
+                final int col = c % SIZE;
+                final double reach = Math.hypot(p % 3 - col / 3, p / 3 - row / 3);
+                final double slide = Math.hypot(col % 3 - 1, row % 3 - 1);
+                mGestureTime[p * SIZE * SIZE + c] = fittsA
+                        + fittsB * (log2(1 + reach) + log2(1 + slide));
+            }
+        }
+        for (int i = 0; i < mModes.length * POSITIONS; i++) {
+            mPathCache.add(new HashMap<String, Path>());
+        }
+        indexTokens();
+    }
+
+    private static double log2(final double x) {
+        return Math.log(x) / Math.log(2);
+    }
+
+    private void indexTokens() {
+        for (int m = 0; m < mModes.length; m++) {
+            for (int c = 0; c < SIZE * SIZE; c++) {
+                final String cell = mTables[m][c / SIZE][c % SIZE];
+                if (cell.isEmpty() || cell.charAt(0) == '\0' || mSwitchTargets[m][c] >= 0) {
+                    continue;
+                }
+                List<String> tokens = mTokensByFirstChar.get(cell.charAt(0));
+                if (tokens == null) {
+                    tokens = new ArrayList<>();
+                    mTokensByFirstChar.put(cell.charAt(0), tokens);
+                }
+                if (!tokens.contains(cell)) {
+                    tokens.add(cell);
+                }
+            }
+        }
+        for (final List<String> tokens : mTokensByFirstChar.values()) {
+            Collections.sort(tokens, new Comparator<String>() {
+                @Override
+                public int compare(final String a, final String b) {
+                    return b.length() - a.length();
+                }
+            });
+        }
+    }
+
+    public double getFittsA() {
+        return mFittsA;
+    }
+
+    public double getFittsB() {
+        return mFittsB;
+    }
+
+    int getModeCount() {
+        return mModes.length;
+    }
+
+    int getModeIndex(final String mode) {
+        for (int m = 0; m < mModes.length; m++) {
+            if (mModes[m].equals(mode)) {
+                return m;
+            }
+        }
+        return -1;
+    }
+
+    String[][] getTable(final int mode) {
+        return mTables[mode];
+    }
+
+    /** The mode a cell switches to, or -1 if it types something. Cells index rows * 9 + cols. */
+    int getSwitchTarget(final int mode, final int cell) {
+        return mSwitchTargets[mode][cell];
+    }
+
+    double getGestureTime(final int position, final int cell) {
+        return mGestureTime[position * SIZE * SIZE + cell];
+    }
+
+    /** The position the finger lifts at after a gesture on the given cell. */
+    static int getLiftPosition(final int cell) {
+        return (cell / SIZE % 3) * 3 + (cell % SIZE % 3);
+    }
+
+    /**
+     * The mode after typing a token. A single cap drops back to lower case after anything but
+     * a space.
+     */
+    int getEndMode(final int mode, final String token) {
+        return mode == mCapMode && !SPACE.equals(token) ? mLetterMode : mode;
+    }
+
+    public int getInitialState() {
+        return mLetterMode * POSITIONS + CENTRE;
+    }
+
+    /**
+     * The longest cell text found at the given index of the text, or null if no cell of any
+     * layout produces it.
+     */
+    public String matchToken(final CharSequence text, final int index) {
+        final List<String> tokens = mTokensByFirstChar.get(text.charAt(index));
+        if (tokens == null) {
+            return null;
+        }
+        for (final String token : tokens) {
+            if (index + token.length() <= text.length()
+                    && token.contentEquals(text.subSequence(index, index + token.length()))) {
+                return token;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The state (mode and lift position) after the given path has been typed.
+     */
+    public static int getEndState(final Path path) {
+        return path.mEndMode * POSITIONS + path.mEndPosition;
+    }
+
+    /**
+     * The cheapest way to type the token starting from the given state, or null if it can't be
+     * reached. This is a shortest path search over (mode, finger position) states, where mode
+     * switch cells are the edges.
+     */
+    public Path getPath(final int state, final String token) {
+        final Map<String, Path> cache = mPathCache.get(state);
+        if (cache.containsKey(token)) {
+            return cache.get(token);
+        }
+        final Path path = search(state, token);
+        cache.put(token, path);
+        return path;
+    }
+
+    private Path search(final int startState, final String token) {
+        final int states = mModes.length * POSITIONS;
+        final double[] time = new double[states];
+        final int[] gestures = new int[states];
+        final boolean[] done = new boolean[states];
+        Arrays.fill(time, Double.POSITIVE_INFINITY);
+        time[startState] = 0;
+
+        Path best = null;
+        for (int round = 0; round < states; round++) {
+            // Few states, so a linear scan beats a heap here.
+            int s = -1;
+            for (int i = 0; i < states; i++) {
+                if (!done[i] && (s < 0 || time[i] < time[s])) {
+                    s = i;
+                }
+            }
+            if (s < 0 || time[s] == Double.POSITIVE_INFINITY
+                    || (best != null && time[s] >= best.mTimeMs)) {
+                break;
+            }
+            done[s] = true;
+            final int mode = s / POSITIONS;
+            final int position = s % POSITIONS;
+            final String[][] table = mTables[mode];
+            for (int c = 0; c < SIZE * SIZE; c++) {
+                final double t = time[s] + mGestureTime[position * SIZE * SIZE + c];
+                final int lift = getLiftPosition(c);
+                final int target = mSwitchTargets[mode][c];
+                if (target >= 0) {
+                    final int next = target * POSITIONS + lift;
+                    if (t < time[next]) {
+                        time[next] = t;
+                        gestures[next] = gestures[s] + 1;
+                    }
+                } else if (token.equals(table[c / SIZE][c % SIZE])
+                        && (best == null || t < best.mTimeMs)) {
+                    best = new Path(gestures[s] + 1, gestures[s], t, getEndMode(mode, token),
+                            lift);
+                }
+            }
+        }
+        return best;
+    }
+}
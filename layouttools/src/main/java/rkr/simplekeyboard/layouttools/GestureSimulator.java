@@ -0,0 +1,178 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays a plain text corpus through the layout tables and reports how many gestures it takes
+ * to type, and how long that would take under {@link GestureCostModel}.
+ *
+ * Usage: {@code GestureSimulator [--layout dir or file] [--fitts-a ms] [--fitts-b ms]
+ * [corpus files...]}. The corpus is read from stdin when no file is given.
+ */
+public final class GestureSimulator {
+    static final String DEFAULT_LAYOUT_PATH = "app/src/main/layouts";
+    private static final int MAX_UNREACHABLE_SHOWN = 10;
+
+    /** Totals for one replay. */
+    public static final class Report {
+        public long mChars;
+        public long mGestures;
+        public long mMultiGestureChars;
+        public long mModeSwitches;
+        public double mTimeMs;
+        public final Map<String, Long> mUnreachable = new HashMap<>();
+
+        public double getCharsPerGesture() {
+            return mGestures == 0 ? 0 : (double) mChars / mGestures;
+        }
+
+        public double getMultiGestureShare() {
+            return mChars == 0 ? 0 : (double) mMultiGestureChars / mChars;
+        }
+
+        public double getTimePerCharMs() {
+            return mChars == 0 ? 0 : mTimeMs / mChars;
+        }
+
+        /** Words per minute, with the usual five characters per word. */
+        public double getWordsPerMinute() {
+            final double perChar = getTimePerCharMs();
+            return perChar == 0 ? 0 : 60000 / perChar / 5;
+        }
+
+        public void print(final PrintStream out) {
+            out.printf("Characters:            %d%n", mChars);
+            out.printf("Gestures:              %d%n", mGestures);
+            out.printf("Characters per gesture: %.3f%n", getCharsPerGesture());
+            out.printf("Two or more gestures:  %.2f%%%n", getMultiGestureShare() * 100);
+            out.printf("Mode switches:         %d%n", mModeSwitches);
+            out.printf("Time per character:    %.1f ms%n", getTimePerCharMs());
+            out.printf("Estimated speed:       %.1f wpm%n", getWordsPerMinute());
+            if (mUnreachable.isEmpty()) {
+                return;
+            }
+            long total = 0;
+            final List<Map.Entry<String, Long>> entries = new ArrayList<>(mUnreachable.entrySet());
+            for (final Map.Entry<String, Long> e : entries) {
+                total += e.getValue();
+            }
+            Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+                @Override
+                public int compare(final Map.Entry<String, Long> a,
+                        final Map.Entry<String, Long> b) {
+                    return Long.compare(b.getValue(), a.getValue());
+                }
+            });
+            out.printf("Unreachable:           %d (", total);
+            for (int i = 0; i < entries.size() && i < MAX_UNREACHABLE_SHOWN; i++) {
+                final int cp = entries.get(i).getKey().codePointAt(0);
+                out.printf(i == 0 ? "U+%04X x%d" : ", U+%04X x%d", cp, entries.get(i).getValue());
+            }
+            out.println(entries.size() > MAX_UNREACHABLE_SHOWN ? ", ...)" : ")");
+        }
+    }
+
+    private GestureSimulator() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * Type the whole text, starting in lower case letters with the finger at the centre.
+     * Carriage returns are ignored so that CRLF files replay the same as LF ones.
+     */
+    public static Report replay(final GestureCostModel model, final CharSequence text) {
+        final Report report = new Report();
+        int state = model.getInitialState();
+        int i = 0;
+        while (i < text.length()) {
+            if (text.charAt(i) == '\r') {
+                i++;
+                continue;
+            }
+            final String token = model.matchToken(text, i);
+            final GestureCostModel.Path path = token == null ? null : model.getPath(state, token);
+            if (path == null) {
+                final int cp = Character.codePointAt(text, i);
+                final String key = new String(Character.toChars(cp));
+                final Long count = report.mUnreachable.get(key);
+                report.mUnreachable.put(key, count == null ? 1 : count + 1);
+                i += Character.charCount(cp);
+                continue;
+            }
+            report.mChars++;
+            report.mGestures += path.mGestures;
+            report.mModeSwitches += path.mModeSwitches;
+            report.mTimeMs += path.mTimeMs;
+            if (path.mGestures > 1) {
+                report.mMultiGestureChars++;
+            }
+            state = GestureCostModel.getEndState(path);
+            i += token.length();
+        }
+        return report;
+    }
+
+    static String readCorpus(final List<String> files) throws IOException {
+        if (files.isEmpty()) {
+            return readAll(System.in);
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final String file : files) {
+            sb.append(new String(Files.readAllBytes(new File(file).toPath()),
+                    StandardCharsets.UTF_8));
+        }
+        return sb.toString();
+    }
+
+    private static String readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: GestureSimulator [--layout dir or file]"
+                + " [--fitts-a ms] [--fitts-b ms] [corpus files...]");
+        System.exit(2);
+    }
+
+    public static void main(final String[] args) throws IOException {
+        String layoutPath = DEFAULT_LAYOUT_PATH;
+        double fittsA = GestureCostModel.DEFAULT_FITTS_A_MS;
+        double fittsB = GestureCostModel.DEFAULT_FITTS_B_MS;
+        final List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            final boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("--layout") && hasValue) {
+                layoutPath = args[++i];
+            } else if (args[i].equals("--fitts-a") && hasValue) {
+                fittsA = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--fitts-b") && hasValue) {
+                fittsB = Double.parseDouble(args[++i]);
+            } else if (args[i].startsWith("--")) {
+                usage();
+            } else {
+                files.add(args[i]);
+            }
+        }
+        final LayoutSource source = LayoutSource.load(new File(layoutPath));
+        final GestureCostModel model = new GestureCostModel(source, fittsA, fittsB);
+        replay(model, readCorpus(files)).print(System.out);
+    }
+}
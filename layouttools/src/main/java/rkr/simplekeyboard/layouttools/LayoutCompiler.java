@@ -0,0 +1,123 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles the layout text files into the binary asset the keyboard reads at startup. Run by the
+ * app's compileLayouts build task.
+ *
+ * The asset is big-endian:
+ * <pre>
+ *   int magic, int version
+ *   int string count, then per string: int UTF-8 length, UTF-8 bytes
+ *   int mode count, then per mode: int code, int label string, int flags,
+ *     81 int cells (row by row)
+ * </pre>
+ * A cell that is a single code point (including 0 for an empty cell, and the special and mode
+ * switch codes) is stored as that code point. Longer text, like flags and other emoji
+ * sequences, is stored as {@code ~index} into the strings, which is always negative.
+ *
+ * Keep in step with KeyboardLayout.load() in the app.
+ */
+public final class LayoutCompiler {
+    public static final int MAGIC = 0x4B394C59; // "K9LY"
+    public static final int VERSION = 2;
+    /** Mode flag: the keyboard makes the cells at runtime, and the stored ones are empty. */
+    public static final int FLAG_GENERATED = 1;
+
+    private LayoutCompiler() {
+        // This utility class is not publicly instantiable.
+    }
+
+    public static void write(final LayoutSource source, final File output) throws IOException {
+        final List<String> pool = new ArrayList<>();
+        final Map<String, Integer> poolIndex = new HashMap<>();
+        final List<String> modes = new ArrayList<>();
+        for (final String mode : source.getModes()) {
+            modes.add(mode);
+        }
+        final int[][] cells = new int[modes.size()][LayoutSource.SIZE * LayoutSource.SIZE];
+        final int[] labels = new int[modes.size()];
+        for (int m = 0; m < modes.size(); m++) {
+            final LayoutSource.Mode mode = source.getMode(modes.get(m));
+            labels[m] = intern(mode.mLabel, pool, poolIndex);
+            for (int i = 0; i < cells[m].length; i++) {
+                final String cell = mode.mTable[i / LayoutSource.SIZE][i % LayoutSource.SIZE];
+                cells[m][i] = cell.codePointCount(0, cell.length()) == 1
+                        ? cell.codePointAt(0) : ~intern(cell, pool, poolIndex);
+            }
+        }
+
+        final File dir = output.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(output)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pool.size());
+            for (final String s : pool) {
+                final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            out.writeInt(modes.size());
+            for (int m = 0; m < modes.size(); m++) {
+                out.writeInt(source.getModeCode(modes.get(m)).codePointAt(0));
+                out.writeInt(labels[m]);
+                out.writeInt(source.getMode(modes.get(m)).mIsGenerated ? FLAG_GENERATED : 0);
+                for (final int cell : cells[m]) {
+                    out.writeInt(cell);
+                }
+            }
+        }
+    }
+
+    private static int intern(final String s, final List<String> pool,
+            final Map<String, Integer> poolIndex) {
+        Integer index = poolIndex.get(s);
+        if (index == null) {
+            index = pool.size();
+            pool.add(s);
+            poolIndex.put(s, index);
+        }
+        return index;
+    }
+
+    /**
+     * Usage: {@code LayoutCompiler <layout dir or file> <output file>}. Exits with an error,
+     * and writes nothing, if the layouts don't validate.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: LayoutCompiler <layout dir or file> <output file>");
+            System.exit(2);
+        }
+        final LayoutSource source;
+        try {
+            source = LayoutSource.load(new File(args[0]));
+        } catch (final IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        final List<String> errors = LayoutValidator.validate(source);
+        if (!errors.isEmpty()) {
+            for (final String error : errors) {
+                System.err.println(error);
+            }
+            System.exit(1);
+        }
+        write(source, new File(args[1]));
+    }
+}
@@ -0,0 +1,217 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Searches rearrangements of the letter layouts for the one that types a corpus fastest.
+ *
+ * Each restart is an independent simulated annealing run over swaps of movable cells (see
+ * {@link LetterGridCost}), seeded from the base seed and its own index, and the restarts run in
+ * parallel on a pool with a thread per core. The winner is the cheapest result, ties going to
+ * the lowest restart, and the number of restarts doesn't depend on the machine, so the output
+ * only depends on the seed and the options and not on the core count or thread scheduling.
+ *
+ * Usage: {@code LayoutOptimiser [--layout dir or file] [--seed n] [--restarts n]
+ * [--iterations n] [--fitts-a ms] [--fitts-b ms] [corpus files...]}
+ */
+public final class LayoutOptimiser {
+    // Starting and final temperatures, relative to the cost of the whole corpus. The temperature
+    // is cooled geometrically from one to the other.
+    private static final double START_TEMPERATURE = 0.05;
+    private static final double END_TEMPERATURE = 0.0001;
+    private static final int DEFAULT_RESTARTS = 8;
+
+    private static final class Result {
+        final int mRestart;
+        final int[] mPermutation;
+        final double mCost;
+
+        Result(final int restart, final int[] permutation, final double cost) {
+            mRestart = restart;
+            mPermutation = permutation;
+            mCost = cost;
+        }
+    }
+
+    private static final class AnnealTask implements Callable<Result> {
+        private final LetterGridCost mCost;
+        private final int mRestart;
+        private final long mSeed;
+        private final int mIterations;
+        private final double mScale;
+
+        AnnealTask(final LetterGridCost cost, final int restart, final long seed,
+                final int iterations, final double scale) {
+            mCost = cost;
+            mRestart = restart;
+            mSeed = seed;
+            mIterations = iterations;
+            mScale = scale;
+        }
+
+        @Override
+        public Result call() {
+            final Random random = new Random(mSeed * 1000003L + mRestart);
+            final int n = mCost.getMovableCount();
+            final int[] current = new int[n];
+            for (int i = 0; i < n; i++) {
+                current[i] = i;
+            }
+            // Restart 0 refines the current layout, the others start anywhere.
+            if (mRestart > 0) {
+                for (int i = n - 1; i > 0; i--) {
+                    swap(current, i, random.nextInt(i + 1));
+                }
+            }
+            double currentCost = mCost.evaluate(current);
+            int[] best = current.clone();
+            double bestCost = currentCost;
+            final double cooling = Math.pow(END_TEMPERATURE / START_TEMPERATURE,
+                    1.0 / Math.max(1, mIterations));
+            double temperature = START_TEMPERATURE * mScale;
+            for (int i = 0; i < mIterations; i++, temperature *= cooling) {
+                final int a = random.nextInt(n);
+                final int b = random.nextInt(n);
+                if (a == b || mCost.isSameValue(current[a], current[b])) {
+                    continue;
+                }
+                swap(current, a, b);
+                final double cost = mCost.evaluate(current);
+                final double delta = cost - currentCost;
+                if (delta <= 0 || random.nextDouble() < Math.exp(-delta / temperature)) {
+                    currentCost = cost;
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        best = current.clone();
+                    }
+                } else {
+                    swap(current, a, b);
+                }
+            }
+            return new Result(mRestart, best, bestCost);
+        }
+
+        private static void swap(final int[] array, final int a, final int b) {
+            final int t = array[a];
+            array[a] = array[b];
+            array[b] = t;
+        }
+    }
+
+    private LayoutOptimiser() {
+        // This utility class is not publicly instantiable.
+    }
+
+    private static void printComparison(final PrintStream out,
+            final GestureSimulator.Report before, final GestureSimulator.Report after) {
+        out.printf("%-24s %12s %12s %9s%n", "", "current", "optimised", "change");
+        printRow(out, "Characters per gesture", before.getCharsPerGesture(),
+                after.getCharsPerGesture());
+        printRow(out, "Two or more gestures %", before.getMultiGestureShare() * 100,
+                after.getMultiGestureShare() * 100);
+        printRow(out, "Time per character ms", before.getTimePerCharMs(),
+                after.getTimePerCharMs());
+        printRow(out, "Estimated wpm", before.getWordsPerMinute(), after.getWordsPerMinute());
+    }
+
+    private static void printRow(final PrintStream out, final String label, final double before,
+            final double after) {
+        out.printf("%-24s %12.3f %12.3f %+8.2f%%%n", label, before, after,
+                before == 0 ? 0 : (after - before) / before * 100);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: LayoutOptimiser [--layout dir or file] [--seed n]"
+                + " [--restarts n] [--iterations n] [--fitts-a ms] [--fitts-b ms]"
+                + " [corpus files...]");
+        System.exit(2);
+    }
+
+    public static void main(final String[] args)
+            throws IOException, InterruptedException, ExecutionException {
+        String layoutPath = GestureSimulator.DEFAULT_LAYOUT_PATH;
+        double fittsA = GestureCostModel.DEFAULT_FITTS_A_MS;
+        double fittsB = GestureCostModel.DEFAULT_FITTS_B_MS;
+        long seed = 1;
+        int restarts = DEFAULT_RESTARTS;
+        int iterations = 20000;
+        final List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            final boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("--layout") && hasValue) {
+                layoutPath = args[++i];
+            } else if (args[i].equals("--seed") && hasValue) {
+                seed = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--restarts") && hasValue) {
+                restarts = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--iterations") && hasValue) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--fitts-a") && hasValue) {
+                fittsA = Double.parseDouble(args[++i]);
+            } else if (args[i].equals("--fitts-b") && hasValue) {
+                fittsB = Double.parseDouble(args[++i]);
+            } else if (args[i].startsWith("--")) {
+                usage();
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        final LayoutSource source = LayoutSource.load(new File(layoutPath));
+        final String corpus = GestureSimulator.readCorpus(files);
+        final GestureCostModel model = new GestureCostModel(source, fittsA, fittsB);
+        final LetterGridCost cost = new LetterGridCost(model, corpus);
+        final GestureSimulator.Report before = GestureSimulator.replay(model, corpus);
+        if (before.mChars == 0) {
+            System.err.println("The corpus has nothing that can be typed.");
+            System.exit(1);
+        }
+
+        // Scale the temperature to the corpus, so the defaults work for any corpus size.
+        final double scale = before.mTimeMs;
+        final List<AnnealTask> tasks = new ArrayList<>();
+        for (int r = 0; r < restarts; r++) {
+            tasks.add(new AnnealTask(cost, r, seed, iterations, scale));
+        }
+        // The core count only decides how many restarts run at once.
+        final int cores = Runtime.getRuntime().availableProcessors();
+        final ExecutorService pool = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(restarts, cores)));
+        Result best = null;
+        try {
+            for (final Future<Result> future : pool.invokeAll(tasks)) {
+                final Result result = future.get();
+                if (best == null || result.mCost < best.mCost) {
+                    best = result;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        final Map<String, String[][]> tables = cost.buildTables(best.mPermutation);
+        final GestureCostModel optimised = new GestureCostModel(source, tables, fittsA, fittsB);
+        final GestureSimulator.Report after = GestureSimulator.replay(optimised, corpus);
+
+        final PrintStream out = System.out;
+        out.printf("Seed %d, %d restarts of %d iterations on %d cores, best from restart %d%n%n",
+                seed, restarts, iterations, cores, best.mRestart);
+        printComparison(out, before, after);
+        out.println();
+        for (final String mode : new String[] { "LET", "CAP", "LOK" }) {
+            source.write(out, mode, tables.get(mode));
+            out.println();
+        }
+    }
+}
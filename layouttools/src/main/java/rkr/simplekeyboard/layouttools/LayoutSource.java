@@ -0,0 +1,291 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the layout text files (app/src/main/layouts/*.layout), which are the source of the
+ * layouts asset built into the app. The format is described at the top of default.layout.
+ */
+public final class LayoutSource {
+    public static final int SIZE = 9;
+    public static final String FILE_EXTENSION = ".layout";
+
+    static final String NUL = "\0";
+    static final String SPACE = " ";
+    // Cell names, and the text each one stands for.
+    private static final String[] CELL_NAMES = {
+            "nul", "SPC", "RET", "BAK", "ARR", "ARL", "ARU", "ARD", "SER", "CPY", "PST" };
+    private static final String[] CELL_VALUES = {
+            NUL, SPACE, "\n", "\u0008", "\uE001", "\uE002", "\uE003", "\uE004", "\uE005",
+            "\uE006", "\uE007" };
+    private static final char ESCAPE = '\\';
+    private static final String COMMENT = "#";
+    private static final String MENU = "menu";
+    private static final String GENERATED = "generated";
+
+    /** One mode: its name, the code that switches to it, and its cells. */
+    public static final class Mode {
+        public final String mName;
+        public final String mCode;
+        public final String mLabel;
+        public final boolean mIsMenu;
+        /** Whether the keyboard makes the cells itself, in which case the file has no rows. */
+        public final boolean mIsGenerated;
+        public final String[][] mTable = new String[SIZE][SIZE];
+        // Where it was defined, for error messages.
+        final String mLocation;
+        // Cell tokens as written, before mode names were resolved.
+        final String[][] mTokens = new String[SIZE][SIZE];
+
+        Mode(final String name, final String code, final String label, final String kind,
+                final String location) {
+            mName = name;
+            mCode = code;
+            mLabel = label;
+            mIsMenu = MENU.equals(kind);
+            mIsGenerated = GENERATED.equals(kind);
+            mLocation = location;
+            if (mIsGenerated) {
+                for (final String[] row : mTokens) {
+                    Arrays.fill(row, CELL_NAMES[0]);
+                }
+            }
+        }
+    }
+
+    private final Map<String, Mode> mModes = new LinkedHashMap<>();
+
+    private LayoutSource() {
+        // Use load().
+    }
+
+    /**
+     * Load a layout file, or every layout file of a directory in name order.
+     */
+    public static LayoutSource load(final File fileOrDirectory) throws IOException {
+        final List<File> files = new ArrayList<>();
+        if (fileOrDirectory.isDirectory()) {
+            final File[] children = fileOrDirectory.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (final File child : children) {
+                    if (child.getName().endsWith(FILE_EXTENSION)) {
+                        files.add(child);
+                    }
+                }
+            }
+        } else {
+            files.add(fileOrDirectory);
+        }
+        if (files.isEmpty()) {
+            throw new IOException("No layout files in " + fileOrDirectory);
+        }
+        final LayoutSource source = new LayoutSource();
+        for (final File file : files) {
+            source.read(file);
+        }
+        source.resolveModeSwitches();
+        return source;
+    }
+
+    private void read(final File file) throws IOException {
+        final List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        Mode mode = null;
+        int row = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            final String location = file.getName() + ":" + (i + 1);
+            if (line.isEmpty() || line.startsWith(COMMENT)) {
+                continue;
+            }
+            final String[] tokens = line.split("\\s+");
+            if (tokens[0].equals("mode")) {
+                if (mode != null && !mode.mIsGenerated && row < SIZE) {
+                    throw new IOException(location + ": mode " + mode.mName + " has only " + row
+                            + " rows");
+                }
+                mode = parseHeader(tokens, location);
+                row = 0;
+                continue;
+            }
+            if (mode == null) {
+                throw new IOException(location + ": cells before the first mode line");
+            }
+            if (mode.mIsGenerated) {
+                throw new IOException(location + ": generated mode " + mode.mName
+                        + " can't have rows");
+            }
+            if (row >= SIZE) {
+                throw new IOException(location + ": mode " + mode.mName + " has more than "
+                        + SIZE + " rows");
+            }
+            if (tokens.length != SIZE) {
+                throw new IOException(location + ": expected " + SIZE + " cells, found "
+                        + tokens.length);
+            }
+            System.arraycopy(tokens, 0, mode.mTokens[row], 0, SIZE);
+            row++;
+        }
+        if (mode != null && !mode.mIsGenerated && row < SIZE) {
+            throw new IOException(file.getName() + ": mode " + mode.mName + " has only " + row
+                    + " rows");
+        }
+    }
+
+    private Mode parseHeader(final String[] tokens, final String location) throws IOException {
+        if (tokens.length < 4 || tokens.length > 5 || (tokens.length == 5
+                && !tokens[4].equals(MENU) && !tokens[4].equals(GENERATED))) {
+            throw new IOException(location
+                    + ": expected 'mode NAME U+CODE LABEL [menu|generated]'");
+        }
+        final String name = tokens[1];
+        if (mModes.containsKey(name) || indexOfCellName(name) >= 0) {
+            throw new IOException(location + ": mode " + name + " is already defined");
+        }
+        if (!tokens[2].startsWith("U+")) {
+            throw new IOException(location + ": bad mode code " + tokens[2]);
+        }
+        final int code;
+        try {
+            code = Integer.parseInt(tokens[2].substring(2), 16);
+        } catch (final NumberFormatException e) {
+            throw new IOException(location + ": bad mode code " + tokens[2]);
+        }
+        final Mode mode = new Mode(name, new String(Character.toChars(code)), tokens[3],
+                tokens.length == 5 ? tokens[4] : null, location);
+        mModes.put(name, mode);
+        return mode;
+    }
+
+    private static int indexOfCellName(final String token) {
+        for (int i = 0; i < CELL_NAMES.length; i++) {
+            if (CELL_NAMES[i].equals(token)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Mode names can be used before they are defined, so cells are resolved once all is read. */
+    private void resolveModeSwitches() {
+        for (final Mode mode : mModes.values()) {
+            for (int r = 0; r < SIZE; r++) {
+                for (int c = 0; c < SIZE; c++) {
+                    mode.mTable[r][c] = parseCell(mode.mTokens[r][c]);
+                }
+            }
+        }
+    }
+
+    private String parseCell(final String token) {
+        if (token.charAt(0) == ESCAPE && token.length() > 1) {
+            return token.substring(1);
+        }
+        final int index = indexOfCellName(token);
+        if (index >= 0) {
+            return CELL_VALUES[index];
+        }
+        final Mode target = mModes.get(token);
+        return target != null ? target.mCode : token;
+    }
+
+    /** The token a cell value is written as, the reverse of reading it. */
+    public String toToken(final String value) {
+        for (int i = 0; i < CELL_VALUES.length; i++) {
+            if (CELL_VALUES[i].equals(value)) {
+                return CELL_NAMES[i];
+            }
+        }
+        final String mode = getModeForCode(value);
+        if (mode != null) {
+            return mode;
+        }
+        if (indexOfCellName(value) >= 0 || mModes.containsKey(value) || value.equals("mode")
+                || value.startsWith(COMMENT) || value.charAt(0) == ESCAPE) {
+            return ESCAPE + value;
+        }
+        return value;
+    }
+
+    /** Mode names (LET, NUM...) in the order they were defined. */
+    public Iterable<String> getModes() {
+        return mModes.keySet();
+    }
+
+    public Mode getMode(final String mode) {
+        return mModes.get(mode);
+    }
+
+    public String[][] getTable(final String mode) {
+        return mModes.get(mode).mTable;
+    }
+
+    public String getModeCode(final String mode) {
+        return mModes.get(mode).mCode;
+    }
+
+    /** The mode name for a cell value, or null if the cell doesn't switch mode. */
+    public String getModeForCode(final String code) {
+        for (final Mode mode : mModes.values()) {
+            if (mode.mCode.equals(code)) {
+                return mode.mName;
+            }
+        }
+        return null;
+    }
+
+    /** Whether the token is the name of a fixed cell, like SPC or RET. */
+    static boolean isCellName(final String token) {
+        return indexOfCellName(token) >= 0;
+    }
+
+    /**
+     * Write a mode in the layout file format, with the columns lined up.
+     */
+    public void write(final PrintStream out, final String mode, final String[][] table) {
+        final Mode m = mModes.get(mode);
+        out.println("mode " + m.mName + " " + String.format("U+%04X", m.mCode.codePointAt(0))
+                + " " + m.mLabel + (m.mIsMenu ? " " + MENU : "")
+                + (m.mIsGenerated ? " " + GENERATED : ""));
+        if (m.mIsGenerated) {
+            return;
+        }
+        final String[][] tokens = new String[SIZE][SIZE];
+        final int[] widths = new int[SIZE];
+        for (int r = 0; r < SIZE; r++) {
+            for (int c = 0; c < SIZE; c++) {
+                tokens[r][c] = toToken(table[r][c]);
+                widths[c] = Math.max(widths[c],
+                        tokens[r][c].codePointCount(0, tokens[r][c].length()));
+            }
+        }
+        for (int r = 0; r < SIZE; r++) {
+            final StringBuilder sb = new StringBuilder();
+            for (int c = 0; c < SIZE; c++) {
+                if (c > 0) {
+                    sb.append(c % 3 == 0 ? "   " : " ");
+                }
+                sb.append(tokens[r][c]);
+                if (c < SIZE - 1) {
+                    for (int w = tokens[r][c].codePointCount(0, tokens[r][c].length());
+                            w < widths[c]; w++) {
+                        sb.append(' ');
+                    }
+                }
+            }
+            out.println(sb.toString().replaceAll("\\s+$", ""));
+            if (r % 3 == 2 && r < SIZE - 1) {
+                out.println();
+            }
+        }
+    }
+}
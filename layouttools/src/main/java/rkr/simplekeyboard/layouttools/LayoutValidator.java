@@ -0,0 +1,110 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that a set of layouts can be used: every mode can be reached and left, and every mode
+ * that types text has the navigation cells.
+ */
+public final class LayoutValidator {
+    /** The mode the keyboard starts in. */
+    public static final String START_MODE = "LET";
+    // Cells that every mode except a menu must have somewhere.
+    private static final String[] NAVIGATION_CELLS = { "RET", "BAK", "ARL", "ARR", "ARU", "ARD" };
+    // Mode codes are private use characters from here on; lower ones are other special cells.
+    private static final int FIRST_MODE_CODE = 0xE100;
+    private static final int LAST_MODE_CODE = 0xF8FF;
+    // An unescaped cell that looks like a mode name but isn't one is almost certainly a typo.
+    private static final Pattern NAME_LIKE = Pattern.compile("[A-Z][A-Z0-9]{2,}");
+
+    private LayoutValidator() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * @return the problems found, each prefixed with where the mode was defined. Empty if the
+     *   layouts are fine.
+     */
+    public static List<String> validate(final LayoutSource source) {
+        final List<String> errors = new ArrayList<>();
+        if (source.getMode(START_MODE) == null) {
+            errors.add("There is no " + START_MODE + " mode, which the keyboard starts in");
+            return errors;
+        }
+        final Set<String> codes = new HashSet<>();
+        for (final String name : source.getModes()) {
+            final LayoutSource.Mode mode = source.getMode(name);
+            final String where = mode.mLocation + ": mode " + name + ": ";
+            final int code = mode.mCode.codePointAt(0);
+            if (code < FIRST_MODE_CODE || code > LAST_MODE_CODE) {
+                errors.add(where + String.format("code U+%04X is outside U+%04X..U+%04X", code,
+                        FIRST_MODE_CODE, LAST_MODE_CODE));
+            }
+            if (!codes.add(mode.mCode)) {
+                errors.add(where + String.format("code U+%04X is used by another mode", code));
+            }
+            final Set<String> tokens = new HashSet<>();
+            boolean hasSwitch = false;
+            for (int r = 0; r < LayoutSource.SIZE; r++) {
+                for (int c = 0; c < LayoutSource.SIZE; c++) {
+                    final String token = mode.mTokens[r][c];
+                    tokens.add(token);
+                    if (source.getMode(token) != null) {
+                        hasSwitch |= !token.equals(name);
+                    } else if (NAME_LIKE.matcher(token).matches()
+                            && !LayoutSource.isCellName(token)) {
+                        errors.add(where + "unknown mode " + token + " in row " + (r + 1)
+                                + " (write \\" + token + " for the text)");
+                    }
+                }
+            }
+            if (mode.mIsGenerated) {
+                // The keyboard fills these in, navigation included.
+                continue;
+            }
+            if (!hasSwitch) {
+                errors.add(where + "no cell switches to another mode, so it can't be left");
+            }
+            if (mode.mIsMenu) {
+                continue;
+            }
+            for (final String cell : NAVIGATION_CELLS) {
+                if (!tokens.contains(cell)) {
+                    errors.add(where + "missing the " + cell + " cell");
+                }
+            }
+        }
+        for (final String name : findUnreachable(source)) {
+            errors.add(source.getMode(name).mLocation + ": mode " + name
+                    + ": no cell switches to it from " + START_MODE);
+        }
+        return errors;
+    }
+
+    private static Set<String> findUnreachable(final LayoutSource source) {
+        final Set<String> unreachable = new HashSet<>();
+        for (final String name : source.getModes()) {
+            unreachable.add(name);
+        }
+        final Deque<String> queue = new ArrayDeque<>();
+        queue.add(START_MODE);
+        unreachable.remove(START_MODE);
+        while (!queue.isEmpty()) {
+            final LayoutSource.Mode mode = source.getMode(queue.poll());
+            for (final String[] row : mode.mTokens) {
+                for (final String token : row) {
+                    if (unreachable.remove(token)) {
+                        queue.add(token);
+                    }
+                }
+            }
+        }
+        return unreachable;
+    }
+}
@@ -0,0 +1,318 @@
+package rkr.simplekeyboard.layouttools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A fast estimate of the cost of typing a corpus when the movable cells of the letter layouts
+ * are rearranged.
+ *
+ * The movable cells are the ones of LET that hold text or nothing, except the space; their CAP and
+ * LOK counterparts move with them. Every other cell, including every mode switch, stays where it
+ * is, so the cost of moving between modes never changes and is worked out once.
+ *
+ * The corpus is reduced to counts of token pairs. Each token is assumed to start from the state
+ * its previous token ends in when typed from the initial state. That ignores longer range effects
+ * such as which cell an earlier token was typed from, so final numbers should come from
+ * {@link GestureSimulator#replay}, but it is cheap enough to evaluate in a search loop.
+ */
+final class LetterGridCost {
+    private static final int SIZE = LayoutSource.SIZE;
+    private static final int POSITIONS = 9;
+    private static final String NUL = "\0";
+    private static final String SPACE = " ";
+
+    private final GestureCostModel mModel;
+    private final int mLetterMode;
+    private final int mCapMode;
+    private final int mLockMode;
+    private final int mStates;
+    // Cells (rows * 9 + cols) of the movable positions, and the original values at each.
+    private final int[] mMovableCells;
+    private final String[] mLowerValues;
+    private final String[] mUpperValues;
+    private final String[] mLockValues;
+    // Cheapest switch-only route between any two (mode, position) states.
+    private final double[] mRoute;
+    // Distinct tokens, and for each the places it can be typed that never move: {mode, cell}.
+    private final String[] mTokens;
+    private final int[][] mFixedPlaces;
+    // For each token, the values (index into the movable values) that type it, per letter mode.
+    private final int[][] mLowerValueIds;
+    private final int[][] mUpperValueIds;
+    private final int[][] mLockValueIds;
+    // Token pairs and how often they occur. A previous token of -1 is the start of the corpus.
+    private final int[] mPairPrevious;
+    private final int[] mPairToken;
+    private final long[] mPairCount;
+
+    LetterGridCost(final GestureCostModel model, final CharSequence corpus) {
+        mModel = model;
+        mLetterMode = model.getModeIndex("LET");
+        mCapMode = model.getModeIndex("CAP");
+        mLockMode = model.getModeIndex("LOK");
+        mStates = model.getModeCount() * POSITIONS;
+
+        final String[][] lower = model.getTable(mLetterMode);
+        final String[][] upper = model.getTable(mCapMode);
+        final String[][] lock = model.getTable(mLockMode);
+        final List<Integer> cells = new ArrayList<>();
+        for (int c = 0; c < SIZE * SIZE; c++) {
+            if (isMovable(lower[c / SIZE][c % SIZE]) && isMovable(upper[c / SIZE][c % SIZE])
+                    && isMovable(lock[c / SIZE][c % SIZE])) {
+                cells.add(c);
+            }
+        }
+        mMovableCells = new int[cells.size()];
+        mLowerValues = new String[cells.size()];
+        mUpperValues = new String[cells.size()];
+        mLockValues = new String[cells.size()];
+        for (int k = 0; k < mMovableCells.length; k++) {
+            final int c = cells.get(k);
+            mMovableCells[k] = c;
+            mLowerValues[k] = lower[c / SIZE][c % SIZE];
+            mUpperValues[k] = upper[c / SIZE][c % SIZE];
+            mLockValues[k] = lock[c / SIZE][c % SIZE];
+        }
+
+        mRoute = buildRoutes();
+
+        // Tokens and pairs of the corpus, as typed on the current layout.
+        final Map<String, Integer> tokenIds = new HashMap<>();
+        final List<String> tokens = new ArrayList<>();
+        final Map<Long, long[]> pairs = new HashMap<>();
+        int previous = -1;
+        int i = 0;
+        while (i < corpus.length()) {
+            final String token = corpus.charAt(i) == '\r' ? null : model.matchToken(corpus, i);
+            if (token == null) {
+                i++;
+                continue;
+            }
+            i += token.length();
+            Integer id = tokenIds.get(token);
+            if (id == null) {
+                id = tokens.size();
+                tokenIds.put(token, id);
+                tokens.add(token);
+            }
+            final long key = ((long) previous << 32) | id;
+            long[] count = pairs.get(key);
+            if (count == null) {
+                count = new long[1];
+                pairs.put(key, count);
+            }
+            count[0]++;
+            previous = id;
+        }
+        mTokens = tokens.toArray(new String[0]);
+        mPairPrevious = new int[pairs.size()];
+        mPairToken = new int[pairs.size()];
+        mPairCount = new long[pairs.size()];
+        int p = 0;
+        for (final Map.Entry<Long, long[]> e : pairs.entrySet()) {
+            mPairPrevious[p] = (int) (e.getKey() >> 32);
+            mPairToken[p] = (int) (long) e.getKey();
+            mPairCount[p] = e.getValue()[0];
+            p++;
+        }
+
+        mFixedPlaces = new int[mTokens.length][];
+        mLowerValueIds = new int[mTokens.length][];
+        mUpperValueIds = new int[mTokens.length][];
+        mLockValueIds = new int[mTokens.length][];
+        for (int t = 0; t < mTokens.length; t++) {
+            indexPlaces(t, cells);
+        }
+    }
+
+    private static boolean isMovable(final String cell) {
+        if (NUL.equals(cell)) {
+            return true;
+        }
+        if (SPACE.equals(cell) || cell.isEmpty()) {
+            return false;
+        }
+        final char c = cell.charAt(0);
+        return c > 31 && c < 0xE000;
+    }
+
+    private void indexPlaces(final int t, final List<Integer> movableCells) {
+        final String token = mTokens[t];
+        final List<Integer> fixed = new ArrayList<>();
+        for (int m = 0; m < mModel.getModeCount(); m++) {
+            final boolean isLetterMode = m == mLetterMode || m == mCapMode || m == mLockMode;
+            final String[][] table = mModel.getTable(m);
+            for (int c = 0; c < SIZE * SIZE; c++) {
+                if (mModel.getSwitchTarget(m, c) < 0 && token.equals(table[c / SIZE][c % SIZE])
+                        && !(isLetterMode && movableCells.contains(c))) {
+                    fixed.add(m * SIZE * SIZE + c);
+                }
+            }
+        }
+        mFixedPlaces[t] = toArray(fixed);
+        mLowerValueIds[t] = findValues(mLowerValues, token);
+        mUpperValueIds[t] = findValues(mUpperValues, token);
+        mLockValueIds[t] = findValues(mLockValues, token);
+    }
+
+    private static int[] findValues(final String[] values, final String token) {
+        final List<Integer> ids = new ArrayList<>();
+        for (int v = 0; v < values.length; v++) {
+            if (values[v].equals(token)) {
+                ids.add(v);
+            }
+        }
+        return toArray(ids);
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /** All pairs cheapest routes over mode switch gestures (Floyd-Warshall, done once). */
+    private double[] buildRoutes() {
+        final int n = mStates;
+        final double[] route = new double[n * n];
+        Arrays.fill(route, Double.POSITIVE_INFINITY);
+        for (int s = 0; s < n; s++) {
+            route[s * n + s] = 0;
+            final int mode = s / POSITIONS;
+            final int position = s % POSITIONS;
+            for (int c = 0; c < SIZE * SIZE; c++) {
+                final int target = mModel.getSwitchTarget(mode, c);
+                if (target < 0) {
+                    continue;
+                }
+                final int next = target * POSITIONS + GestureCostModel.getLiftPosition(c);
+                route[s * n + next] = Math.min(route[s * n + next],
+                        mModel.getGestureTime(position, c));
+            }
+        }
+        for (int k = 0; k < n; k++) {
+            for (int i = 0; i < n; i++) {
+                final double ik = route[i * n + k];
+                if (ik == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                for (int j = 0; j < n; j++) {
+                    final double d = ik + route[k * n + j];
+                    if (d < route[i * n + j]) {
+                        route[i * n + j] = d;
+                    }
+                }
+            }
+        }
+        return route;
+    }
+
+    /** Number of movable cells, which is the length of a permutation. */
+    int getMovableCount() {
+        return mMovableCells.length;
+    }
+
+    /** Whether two movable cells hold the same value, so swapping them changes nothing. */
+    boolean isSameValue(final int a, final int b) {
+        return mLowerValues[a].equals(mLowerValues[b]);
+    }
+
+    /**
+     * Estimated time to type the corpus, in milliseconds, with value {@code permutation[k]} at
+     * movable cell {@code k}. The identity permutation is the current layout.
+     */
+    double evaluate(final int[] permutation) {
+        final int[] cellOfValue = new int[permutation.length];
+        for (int k = 0; k < permutation.length; k++) {
+            cellOfValue[permutation[k]] = mMovableCells[k];
+        }
+        final double[] time = new double[1];
+        // The state each token leaves behind, when typed from the initial state.
+        final int start = mModel.getInitialState();
+        final int[] endStates = new int[mTokens.length];
+        for (int t = 0; t < mTokens.length; t++) {
+            endStates[t] = cheapest(start, t, cellOfValue, time);
+        }
+        double total = 0;
+        for (int p = 0; p < mPairCount.length; p++) {
+            final int from = mPairPrevious[p] < 0 ? start : endStates[mPairPrevious[p]];
+            cheapest(from, mPairToken[p], cellOfValue, time);
+            total += mPairCount[p] * time[0];
+        }
+        return total;
+    }
+
+    /**
+     * The cheapest way to type a token from a state.
+     * @param time receives the time taken, in its first element.
+     * @return the state after the token was typed.
+     */
+    private int cheapest(final int from, final int t, final int[] cellOfValue,
+            final double[] time) {
+        time[0] = Double.POSITIVE_INFINITY;
+        int end = from;
+        for (final int place : mFixedPlaces[t]) {
+            end = consider(from, place / (SIZE * SIZE), place % (SIZE * SIZE), t, time, end);
+        }
+        for (final int v : mLowerValueIds[t]) {
+            end = consider(from, mLetterMode, cellOfValue[v], t, time, end);
+        }
+        for (final int v : mUpperValueIds[t]) {
+            end = consider(from, mCapMode, cellOfValue[v], t, time, end);
+        }
+        for (final int v : mLockValueIds[t]) {
+            end = consider(from, mLockMode, cellOfValue[v], t, time, end);
+        }
+        return end;
+    }
+
+    private int consider(final int from, final int mode, final int cell, final int t,
+            final double[] time, final int end) {
+        final int n = mStates;
+        int result = end;
+        for (int position = 0; position < POSITIONS; position++) {
+            final double route = mRoute[from * n + mode * POSITIONS + position];
+            if (route == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            final double candidate = route + mModel.getGestureTime(position, cell);
+            if (candidate < time[0]) {
+                time[0] = candidate;
+                result = mModel.getEndMode(mode, mTokens[t]) * POSITIONS
+                        + GestureCostModel.getLiftPosition(cell);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The LET, CAP and LOK tables for a permutation, keyed by mode name, as overrides for
+     * {@link GestureCostModel}.
+     */
+    Map<String, String[][]> buildTables(final int[] permutation) {
+        final Map<String, String[][]> tables = new HashMap<>();
+        tables.put("LET", permute(mModel.getTable(mLetterMode), mLowerValues, permutation));
+        tables.put("CAP", permute(mModel.getTable(mCapMode), mUpperValues, permutation));
+        tables.put("LOK", permute(mModel.getTable(mLockMode), mLockValues, permutation));
+        return tables;
+    }
+
+    private String[][] permute(final String[][] table, final String[] values,
+            final int[] permutation) {
+        final String[][] result = new String[SIZE][];
+        for (int r = 0; r < SIZE; r++) {
+            result[r] = table[r].clone();
+        }
+        for (int k = 0; k < permutation.length; k++) {
+            final int c = mMovableCells[k];
+            result[c / SIZE][c % SIZE] = values[permutation[k]];
+        }
+        return result;
+    }
+}